@@ -0,0 +1,103 @@
+package com.huaze.shen.benchmark;
+
+import com.huaze.shen.feature.FeatureExtractor;
+import com.huaze.shen.util.SortMapUtil;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Huaze Shen
+ * @date 2026-10-18
+ *
+ * FeatureExtractor热点路径的基准测试，语料为自带的pku_test_gold.utf8。
+ * 词表、特征表和中间文件写到临时目录，不改动src/main/resources。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FeatureExtractorBenchmark {
+    @Param({"../src/main/resources/data/pku_test_gold.utf8"})
+    public String trainFile;
+
+    private File workDir;
+    private FeatureExtractor featureExtractor;
+    private List<List<String>> charLists;
+    private int sentence;
+    private Map<String, Integer> featureCountMap;
+    private String charTagFile;
+    private String featureFile;
+    private String featureIndexFile;
+    private String tagIndexFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        workDir = Files.createTempDirectory("pkuseg_benchmark_").toFile();
+        featureExtractor = new FeatureExtractor(trainFile, workDir.getPath() + "/", null, 1);
+        charLists = featureExtractor.getCharLists();
+        charTagFile = new File(workDir, "char_tag.txt").getPath();
+        featureFile = new File(workDir, "feature.txt").getPath();
+        featureIndexFile = new File(workDir, "feature_index.txt").getPath();
+        tagIndexFile = new File(workDir, "tag_index.txt").getPath();
+        featureExtractor.convertTextFileToFeatureFile(trainFile, charTagFile, featureFile);
+        // 特征表的key以HashMap顺序给出，与createFeatures中排序前的状态相同
+        featureCountMap = new HashMap<>(featureExtractor.getFeatureIndexMap());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        File[] files = workDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        workDir.delete();
+    }
+
+    /**
+     * 每次调用抽取一个句子全部字的特征，句子依次轮换
+     */
+    @Benchmark
+    public void getNodeFeatures(Blackhole blackhole) {
+        List<String> charList = charLists.get(sentence);
+        sentence = sentence + 1 == charLists.size() ? 0 : sentence + 1;
+        for (int i = 0; i < charList.size(); i++) {
+            blackhole.consume(featureExtractor.getNodeFeatures(i, charList));
+        }
+    }
+
+    /**
+     * 整个语料的特征统计、排序和下标分配
+     */
+    @Benchmark
+    public int createFeatures() {
+        featureExtractor.createFeatures();
+        return featureExtractor.getFeatureIndexMap().size();
+    }
+
+    @Benchmark
+    public void convertTextFileToFeatureFile() {
+        featureExtractor.convertTextFileToFeatureFile(trainFile, charTagFile, featureFile);
+    }
+
+    @Benchmark
+    public void convertFeatureFileToIndexFile() {
+        featureExtractor.convertFeatureFileToIndexFile(featureFile, featureIndexFile, tagIndexFile);
+    }
+
+    @Benchmark
+    public Map<String, Integer> sortByKey() {
+        return SortMapUtil.sortByKey(featureCountMap, true);
+    }
+}
@@ -0,0 +1,148 @@
+package com.huaze.shen.corpus;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * @author Huaze Shen
+ * @date 2026-10-18
+ *
+ * 读取BinaryCorpusWriter写出的二进制语料。文件只读映射，游标直接在映射页上解码，
+ * 训练时每一轮都可以重新扫描而不需要解析文本。单个文件不超过2GB，由BinaryCorpusWriter写出时检查。
+ */
+public class BinaryCorpusReader {
+    private ByteBuffer buffer;
+    private int featureCount;
+    private int tagCount;
+    private int sentenceCount;
+
+    private BinaryCorpusReader(ByteBuffer buffer) {
+        this.buffer = buffer;
+        if (buffer.getInt(0) != BinaryCorpusWriter.MAGIC || buffer.getInt(4) != BinaryCorpusWriter.VERSION) {
+            throw new IllegalArgumentException("not a binary corpus file");
+        }
+        featureCount = buffer.getInt(8);
+        tagCount = buffer.getInt(12);
+        sentenceCount = buffer.getInt(16);
+    }
+
+    public static BinaryCorpusReader open(String file) throws IOException {
+        try (FileChannel fileChannel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+            MappedByteBuffer mappedByteBuffer = fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, fileChannel.size());
+            return new BinaryCorpusReader(mappedByteBuffer);
+        }
+    }
+
+    public int getFeatureCount() {
+        return featureCount;
+    }
+
+    public int getTagCount() {
+        return tagCount;
+    }
+
+    public int getSentenceCount() {
+        return sentenceCount;
+    }
+
+    /**
+     * 新建一个从头开始的游标，多个线程各自使用自己的游标
+     */
+    public Cursor cursor() {
+        return new Cursor(buffer.duplicate());
+    }
+
+    /**
+     * 句子游标：next()移到下一句，之后依次用nextNode()解码每个节点的特征
+     */
+    public static class Cursor {
+        private ByteBuffer buffer;
+        private int position;
+        private int sentenceEnd;
+        private int length;
+        private int tagOffset;
+        private int nodeIndex;
+
+        private Cursor(ByteBuffer buffer) {
+            this.buffer = buffer;
+            rewind();
+        }
+
+        public void rewind() {
+            position = BinaryCorpusWriter.HEADER_BYTES;
+            sentenceEnd = position;
+            length = 0;
+            nodeIndex = 0;
+        }
+
+        public boolean next() {
+            position = sentenceEnd;
+            if (position >= buffer.limit()) {
+                length = 0;
+                return false;
+            }
+            int bodyLength = buffer.getInt(position);
+            position += Integer.BYTES;
+            sentenceEnd = position + bodyLength;
+            length = readVarint();
+            tagOffset = position;
+            position += length;
+            nodeIndex = 0;
+            return true;
+        }
+
+        public int length() {
+            return length;
+        }
+
+        public int tag(int index) {
+            return buffer.get(tagOffset + index);
+        }
+
+        /**
+         * 下一个节点的特征个数，不移动游标，用于在nextNode之前确认缓冲区足够大；没有剩余节点时返回-1
+         */
+        public int peekNodeFeatureCount() {
+            if (nodeIndex >= length) {
+                return -1;
+            }
+            int start = position;
+            int count = readVarint();
+            position = start;
+            return count;
+        }
+
+        /**
+         * 解码下一个节点的特征下标(升序)写入features，返回特征个数，句子中没有剩余节点时返回-1
+         */
+        public int nextNode(int[] features) {
+            if (nodeIndex >= length) {
+                return -1;
+            }
+            nodeIndex++;
+            int count = readVarint();
+            int feature = 0;
+            for (int i = 0; i < count; i++) {
+                feature += readVarint();
+                features[i] = feature;
+            }
+            return count;
+        }
+
+        private int readVarint() {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buffer.get(position++);
+                value |= (b & 0x7f) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.huaze.shen.corpus;
+
+import com.huaze.shen.feature.IntFeatureExtractor;
+import com.huaze.shen.feature.TagScheme;
+
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * @author Huaze Shen
+ * @date 2026-10-18
+ *
+ * 把原始文本一遍直接转换成二进制特征语料，不经过特征字符串文件。
+ *
+ * 文件格式(大端)：
+ * magic(int) version(int) featureCount(int) tagCount(int) sentenceCount(int)，之后每个句子为
+ * bodyLength(int) length(varint) tags(byte[length]) 以及每个节点的
+ * featureCount(varint) 升序特征下标的差分(varint...)
+ *
+ * BinaryCorpusReader用一个int下标的缓冲区映射整个文件，文件不能超过Integer.MAX_VALUE字节：
+ * 写入下一句会超出时抛出IOException，该句不写入，close后已写出的句子仍然可以读取。
+ */
+public class BinaryCorpusWriter implements Closeable {
+    public static final int MAGIC = 0x504b4243;
+    public static final int VERSION = 1;
+    static final int HEADER_BYTES = 20;
+    static final long MAX_FILE_BYTES = Integer.MAX_VALUE;
+
+    private String file;
+    private DataOutputStream dataOutputStream;
+    private int sentenceCount;
+    private long fileLength = HEADER_BYTES;
+    private byte[] body = new byte[1 << 12];
+    private int bodyLength;
+    private byte[] tags = new byte[256];
+    private int[] features;
+
+    public BinaryCorpusWriter(String file, int featureCount, int tagCount) throws IOException {
+        this.file = file;
+        dataOutputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+        dataOutputStream.writeInt(MAGIC);
+        dataOutputStream.writeInt(VERSION);
+        dataOutputStream.writeInt(featureCount);
+        dataOutputStream.writeInt(tagCount);
+        // 句子数在close时回填
+        dataOutputStream.writeInt(0);
+    }
+
+    /**
+     * 用IntFeatureExtractor逐行转换文本文件，返回句子数
+     */
+    public static int convert(IntFeatureExtractor intFeatureExtractor, String textFile, String binaryFile)
+            throws IOException {
+        try (BufferedReader bufferedReader = new BufferedReader(new FileReader(textFile));
+             BinaryCorpusWriter binaryCorpusWriter =
+                     new BinaryCorpusWriter(binaryFile, intFeatureExtractor.featureCount(), TagScheme.COUNT)) {
+            String line;
+            while ((line = bufferedReader.readLine()) != null) {
+                if (intFeatureExtractor.setSentence(line) > 0) {
+                    binaryCorpusWriter.writeSentence(intFeatureExtractor);
+                }
+            }
+            return binaryCorpusWriter.sentenceCount;
+        }
+    }
+
+    /**
+     * 写出intFeatureExtractor当前载入的句子，标签取自句子中按空格切分的词
+     */
+    public void writeSentence(IntFeatureExtractor intFeatureExtractor) throws IOException {
+        int length = intFeatureExtractor.length();
+        if (tags.length < length) {
+            tags = new byte[Math.max(length, tags.length * 2)];
+        }
+        if (features == null) {
+            features = new int[intFeatureExtractor.maxNodeFeatures()];
+        }
+        intFeatureExtractor.getTags(tags);
+        bodyLength = 0;
+        writeVarint(length);
+        ensureBody(length);
+        System.arraycopy(tags, 0, body, bodyLength, length);
+        bodyLength += length;
+        for (int index = 0; index < length; index++) {
+            int count = intFeatureExtractor.getNodeFeatures(index, features);
+            Arrays.sort(features, 0, count);
+            writeVarint(count);
+            int prev = 0;
+            for (int i = 0; i < count; i++) {
+                writeVarint(features[i] - prev);
+                prev = features[i];
+            }
+        }
+        if (fileLength + Integer.BYTES + bodyLength > MAX_FILE_BYTES) {
+            throw new IOException("binary corpus " + file + " would exceed " + MAX_FILE_BYTES + " bytes after "
+                    + sentenceCount + " sentences");
+        }
+        dataOutputStream.writeInt(bodyLength);
+        dataOutputStream.write(body, 0, bodyLength);
+        fileLength += Integer.BYTES + bodyLength;
+        sentenceCount++;
+    }
+
+    public int getSentenceCount() {
+        return sentenceCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        dataOutputStream.close();
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.seek(HEADER_BYTES - Integer.BYTES);
+            randomAccessFile.writeInt(sentenceCount);
+        }
+    }
+
+    private void writeVarint(int value) {
+        ensureBody(5);
+        while ((value & ~0x7f) != 0) {
+            body[bodyLength++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        body[bodyLength++] = (byte) value;
+    }
+
+    private void ensureBody(int extra) {
+        if (bodyLength + extra > body.length) {
+            body = Arrays.copyOf(body, Math.max(bodyLength + extra, body.length * 2));
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.huaze.shen.crf;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * @author Huaze Shen
+ * @date 2026-10-18
+ *
+ * 线性链CRF模型参数：按特征排列的发射权重weights[feature * tagCount + tag]，
+ * 以及转移权重transitions[from * tagCount + to]
+ */
+public class CrfModel implements ModelWeights {
+    public static final int MAGIC = 0x504b4346;
+    public static final int VERSION = 1;
+
+    private int featureCount;
+    private int tagCount;
+    private float[] weights;
+    private float[] transitions;
+
+    public CrfModel(int featureCount, int tagCount) {
+        this(featureCount, tagCount, new float[featureCount * tagCount], new float[tagCount * tagCount]);
+    }
+
+    public CrfModel(int featureCount, int tagCount, float[] weights, float[] transitions) {
+        this.featureCount = featureCount;
+        this.tagCount = tagCount;
+        this.weights = weights;
+        this.transitions = transitions;
+    }
+
+    @Override
+    public int getFeatureCount() {
+        return featureCount;
+    }
+
+    @Override
+    public int getTagCount() {
+        return tagCount;
+    }
+
+    public float[] getWeights() {
+        return weights;
+    }
+
+    @Override
+    public void addEmissions(int feature, float[] emissions, int offset) {
+        if (feature >= 0) {
+            int row = feature * tagCount;
+            for (int tag = 0; tag < tagCount; tag++) {
+                emissions[offset + tag] += weights[row + tag];
+            }
+        } else {
+            int row = ~feature * tagCount;
+            for (int tag = 0; tag < tagCount; tag++) {
+                emissions[offset + tag] -= weights[row + tag];
+            }
+        }
+    }
+
+    @Override
+    public float[] getTransitions() {
+        return transitions;
+    }
+
+    public void save(String file) throws IOException {
+        try (DataOutputStream dataOutputStream = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+            write(dataOutputStream);
+        }
+    }
+
+    /**
+     * 按模型文件的格式写出，也用于写入快照文件中的一节
+     */
+    public void write(DataOutput dataOutput) throws IOException {
+        dataOutput.writeInt(MAGIC);
+        dataOutput.writeInt(VERSION);
+        dataOutput.writeInt(featureCount);
+        dataOutput.writeInt(tagCount);
+        for (float weight : weights) {
+            dataOutput.writeFloat(weight);
+        }
+        for (float transition : transitions) {
+            dataOutput.writeFloat(transition);
+        }
+    }
+
+    /**
+     * 从position开始读取write写出的模型，权重整块复制到堆上
+     */
+    public static CrfModel read(ByteBuffer buffer) throws IOException {
+        int start = buffer.position();
+        if (buffer.getInt(start) != MAGIC || buffer.getInt(start + 4) != VERSION) {
+            throw new IOException("not a crf model");
+        }
+        int featureCount = buffer.getInt(start + 8);
+        int tagCount = buffer.getInt(start + 12);
+        float[] weights = new float[featureCount * tagCount];
+        float[] transitions = new float[tagCount * tagCount];
+        ByteBuffer floats = buffer.duplicate();
+        floats.position(start + 16);
+        floats.asFloatBuffer().get(weights).get(transitions);
+        return new CrfModel(featureCount, tagCount, weights, transitions);
+    }
+
+    public static CrfModel load(String file) throws IOException {
+        try (DataInputStream dataInputStream = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            if (dataInputStream.readInt() != MAGIC || dataInputStream.readInt() != VERSION) {
+                throw new IOException("not a crf model file: " + file);
+            }
+            int featureCount = dataInputStream.readInt();
+            int tagCount = dataInputStream.readInt();
+            float[] weights = new float[featureCount * tagCount];
+            for (int i = 0; i < weights.length; i++) {
+                weights[i] = dataInputStream.readFloat();
+            }
+            float[] transitions = new float[tagCount * tagCount];
+            for (int i = 0; i < transitions.length; i++) {
+                transitions[i] = dataInputStream.readFloat();
+            }
+            return new CrfModel(featureCount, tagCount, weights, transitions);
+        }
+    }
+}
@@ -0,0 +1,345 @@
+package com.huaze.shen.crf;
+
+import com.huaze.shen.dict.UserDictionary;
+import com.huaze.shen.feature.IntFeatureExtractor;
+import com.huaze.shen.feature.TagScheme;
+import com.huaze.shen.metrics.Counter;
+import com.huaze.shen.metrics.Metrics;
+import com.huaze.shen.metrics.MetricsRegistry;
+import com.huaze.shen.metrics.StageTimer;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * @author Huaze Shen
+ * @date 2026-10-18
+ *
+ * 基于CRF的分词器：发射分数为节点上所有特征权重之和，在标签转移矩阵上做一阶Viterbi解码，
+ * 以B或B_single开始一个新词。每个线程持有预分配的缓冲区，稳定状态下除输出的词外不分配内存。
+ * 线程安全，可以被多个线程共享。
+ *
+ * 性能目标：单核每秒解码不少于50万字。
+ */
+public class CrfSegmenter {
+    public static final String STAGE_DECODE = "segment.decode";
+    public static final String SENTENCES = "segment.sentences";
+    public static final String CACHE_HITS = "segment.cache.hits";
+    public static final String CACHE_MISSES = "segment.cache.misses";
+    public static final String CACHE_EVICTIONS = "segment.cache.evictions";
+    public static final String CACHE_BYTES = "segment.cache.bytes";
+
+    private IntFeatureExtractor prototype;
+    private ModelWeights model;
+    private ThreadLocal<Decoder> decoders;
+    private StageTimer decodeTimer = Metrics.get().timer(STAGE_DECODE);
+    private Counter sentenceCounter = Metrics.get().counter(SENTENCES);
+    private volatile SegmentationCache cache;
+    private Map<String, LongSupplier> cacheGauges = new HashMap<>();
+    private volatile UserDictionary userDictionary;
+
+    /**
+     * model可以是堆上的CrfModel，也可以是映射到文件的QuantizedModel
+     */
+    public CrfSegmenter(IntFeatureExtractor intFeatureExtractor, ModelWeights model) {
+        this.prototype = intFeatureExtractor;
+        this.model = model;
+        this.decoders = ThreadLocal.withInitial(() -> new Decoder(prototype.copy()));
+    }
+
+    /**
+     * 从快照载入词典、特征表和权重，不读训练语料
+     */
+    public CrfSegmenter(ModelSnapshot snapshot) throws IOException {
+        this(snapshot.createIntFeatureExtractor(), snapshot.getModel());
+    }
+
+    public ModelWeights getModel() {
+        return model;
+    }
+
+    /**
+     * 开启分词结果缓存，传入null关闭。命中时跳过词典匹配、特征抽取和解码，
+     * 缓存的统计同时注册为指标仪表。替换或关闭缓存时移除原来的仪表，
+     * 仪表只弱引用缓存，不会让全局注册表持有已经不用的缓存。
+     */
+    public synchronized void setCache(SegmentationCache cache) {
+        this.cache = cache;
+        MetricsRegistry metricsRegistry = Metrics.get();
+        for (Map.Entry<String, LongSupplier> entry : cacheGauges.entrySet()) {
+            metricsRegistry.removeGauge(entry.getKey(), entry.getValue());
+        }
+        cacheGauges.clear();
+        if (cache != null) {
+            WeakReference<SegmentationCache> cacheReference = new WeakReference<>(cache);
+            registerCacheGauge(CACHE_HITS, cacheReference, SegmentationCache.Stats::getHitCount);
+            registerCacheGauge(CACHE_MISSES, cacheReference, SegmentationCache.Stats::getMissCount);
+            registerCacheGauge(CACHE_EVICTIONS, cacheReference, SegmentationCache.Stats::getEvictionCount);
+            registerCacheGauge(CACHE_BYTES, cacheReference, SegmentationCache.Stats::getBytes);
+        }
+    }
+
+    private void registerCacheGauge(String name, WeakReference<SegmentationCache> cacheReference,
+                                    ToLongFunction<SegmentationCache.Stats> value) {
+        LongSupplier supplier = () -> {
+            SegmentationCache cache = cacheReference.get();
+            return cache == null ? 0 : value.applyAsLong(cache.stats());
+        };
+        cacheGauges.put(name, supplier);
+        Metrics.get().gauge(name, supplier);
+    }
+
+    public SegmentationCache getCache() {
+        return cache;
+    }
+
+    /**
+     * 设置用户词典，传入null取消。句子中的词典词按从左到右、最长优先选出互不重叠的一组，
+     * 解码时把这些位置的标签固定为词内标签，并让词后的一个字以B或B_single开始新词。
+     * 词典按原始字符匹配，设置后缓存改用原始字符的哈希。开启了缓存时换上一个同样大小的新缓存
+     * (getCache返回新的实例，统计从零开始)：正在用旧词典分词的线程只会写入旧缓存，不会留下过期的结果。
+     */
+    public synchronized void setUserDictionary(UserDictionary userDictionary) {
+        this.userDictionary = userDictionary;
+        SegmentationCache cache = this.cache;
+        if (cache != null) {
+            setCache(new SegmentationCache(cache.getMaxBytes(), cache.getSegmentCount()));
+        }
+    }
+
+    public UserDictionary getUserDictionary() {
+        return userDictionary;
+    }
+
+    /**
+     * 对一个句子分词，首尾空白和句中的空格、制表符会被去掉。
+     * 也可以直接传入包装了读缓冲区的CharBuffer，不构造中间字符串。
+     */
+    public List<String> segment(CharSequence sentence) {
+        Decoder decoder = decoders.get();
+        IntFeatureExtractor intFeatureExtractor = decoder.intFeatureExtractor;
+        // 先读缓存再读词典：setUserDictionary先换词典再换缓存，读到新缓存时一定也读到新词典
+        SegmentationCache cache = this.cache;
+        UserDictionary userDictionary = this.userDictionary;
+        int length = intFeatureExtractor.normalizeSentence(sentence);
+        if (cache == null || length == 0 || length > Character.MAX_VALUE) {
+            decoder.decodeNormalized(length, userDictionary);
+            return decoder.words(length);
+        }
+        // 用户词典按原始字符匹配，归一化字符相同的句子可能分出不同的词
+        long hash = userDictionary == null ? SegmentationCache.hash(intFeatureExtractor)
+                : SegmentationCache.sourceHash(intFeatureExtractor);
+        char[] ends = cache.get(hash, length);
+        if (ends == null) {
+            decoder.decodeNormalized(length, userDictionary);
+            ends = decoder.wordEnds(length);
+            cache.put(hash, ends);
+        } else {
+            sentenceCounter.increment();
+        }
+        List<String> words = new ArrayList<>(ends.length);
+        int wordBegin = 0;
+        for (char end : ends) {
+            words.add(intFeatureExtractor.substring(wordBegin, end));
+            wordBegin = end;
+        }
+        return words;
+    }
+
+    public List<List<String>> segment(List<String> sentences) {
+        List<List<String>> results = new ArrayList<>(sentences.size());
+        for (String sentence : sentences) {
+            results.add(segment(sentence));
+        }
+        return results;
+    }
+
+    /**
+     * 只输出标签：把每个字的标签写入tags并返回句子长度，不分配内存
+     */
+    public int tag(String sentence, int[] tags) {
+        Decoder decoder = decoders.get();
+        int length = decoder.decode(sentence);
+        System.arraycopy(decoder.tags, 0, tags, 0, length);
+        return length;
+    }
+
+    /**
+     * 每个线程一份的解码缓冲区
+     */
+    private class Decoder {
+        private IntFeatureExtractor intFeatureExtractor;
+        private int[] features;
+        private float[] emissions = new float[0];
+        private float[] scores = new float[0];
+        private int[] backPointers = new int[0];
+        private int[] tags = new int[0];
+        private int[] sourceChars = new int[0];
+        private int[] longestEnds = new int[0];
+
+        Decoder(IntFeatureExtractor intFeatureExtractor) {
+            this.intFeatureExtractor = intFeatureExtractor;
+            this.features = new int[intFeatureExtractor.maxNodeFeatures()];
+        }
+
+        int decode(CharSequence sentence) {
+            int length = intFeatureExtractor.normalizeSentence(sentence);
+            decodeNormalized(length, userDictionary);
+            return length;
+        }
+
+        /**
+         * 解码已经归一化的句子，userDictionary不为null时按词典约束，结果写入tags
+         */
+        void decodeNormalized(int length, UserDictionary userDictionary) {
+            long decodeStart = decodeTimer.start();
+            intFeatureExtractor.matchLexicon();
+            int tagCount = model.getTagCount();
+            ensureCapacity(length, tagCount);
+            computeEmissions(length, tagCount);
+            if (userDictionary != null) {
+                constrainEmissions(userDictionary, length, tagCount);
+            }
+            viterbi(length, tagCount);
+            decodeTimer.stop(decodeStart, length);
+            sentenceCounter.increment();
+        }
+
+        List<String> words(int length) {
+            List<String> words = new ArrayList<>();
+            int wordBegin = 0;
+            for (int i = 1; i <= length; i++) {
+                if (i == length || TagScheme.isWordStart(tags[i])) {
+                    words.add(intFeatureExtractor.substring(wordBegin, i));
+                    wordBegin = i;
+                }
+            }
+            return words;
+        }
+
+        /**
+         * 每个词的结束位置，最后一项等于句子长度
+         */
+        char[] wordEnds(int length) {
+            int wordCount = 0;
+            for (int i = 1; i <= length; i++) {
+                if (i == length || TagScheme.isWordStart(tags[i])) {
+                    wordCount++;
+                }
+            }
+            char[] ends = new char[wordCount];
+            wordCount = 0;
+            for (int i = 1; i <= length; i++) {
+                if (i == length || TagScheme.isWordStart(tags[i])) {
+                    ends[wordCount++] = (char) i;
+                }
+            }
+            return ends;
+        }
+
+        private void computeEmissions(int length, int tagCount) {
+            for (int index = 0; index < length; index++) {
+                int offset = index * tagCount;
+                for (int tag = 0; tag < tagCount; tag++) {
+                    emissions[offset + tag] = 0;
+                }
+                int count = intFeatureExtractor.getNodeFeatures(index, features);
+                for (int i = 0; i < count; i++) {
+                    model.addEmissions(features[i], emissions, offset);
+                }
+            }
+        }
+
+        /**
+         * 词典词所在位置只保留tagOf给出的标签，其余标签的发射分数置为负无穷
+         */
+        private void constrainEmissions(UserDictionary userDictionary, int length, int tagCount) {
+            for (int i = 0; i < length; i++) {
+                sourceChars[i] = intFeatureExtractor.sourceChar(i);
+            }
+            if (userDictionary.longestMatches(sourceChars, length, longestEnds) == 0) {
+                return;
+            }
+            int start = 0;
+            while (start < length) {
+                int end = longestEnds[start];
+                if (end == 0) {
+                    start++;
+                    continue;
+                }
+                for (int index = start; index < end; index++) {
+                    int forcedTag = TagScheme.tagOf(index - start, end - start);
+                    int offset = index * tagCount;
+                    for (int tag = 0; tag < tagCount; tag++) {
+                        if (tag != forcedTag) {
+                            emissions[offset + tag] = Float.NEGATIVE_INFINITY;
+                        }
+                    }
+                }
+                if (end < length) {
+                    int offset = end * tagCount;
+                    for (int tag = 0; tag < tagCount; tag++) {
+                        if (!TagScheme.isWordStart(tag)) {
+                            emissions[offset + tag] = Float.NEGATIVE_INFINITY;
+                        }
+                    }
+                }
+                start = end;
+            }
+        }
+
+        private void viterbi(int length, int tagCount) {
+            if (length == 0) {
+                return;
+            }
+            float[] transitions = model.getTransitions();
+            System.arraycopy(emissions, 0, scores, 0, tagCount);
+            for (int index = 1; index < length; index++) {
+                int offset = index * tagCount;
+                int prevOffset = offset - tagCount;
+                for (int tag = 0; tag < tagCount; tag++) {
+                    float best = Float.NEGATIVE_INFINITY;
+                    int bestPrev = 0;
+                    for (int prev = 0; prev < tagCount; prev++) {
+                        float score = scores[prevOffset + prev] + transitions[prev * tagCount + tag];
+                        if (score > best) {
+                            best = score;
+                            bestPrev = prev;
+                        }
+                    }
+                    scores[offset + tag] = best + emissions[offset + tag];
+                    backPointers[offset + tag] = bestPrev;
+                }
+            }
+            int lastOffset = (length - 1) * tagCount;
+            int bestTag = 0;
+            for (int tag = 1; tag < tagCount; tag++) {
+                if (scores[lastOffset + tag] > scores[lastOffset + bestTag]) {
+                    bestTag = tag;
+                }
+            }
+            for (int index = length - 1; index >= 0; index--) {
+                tags[index] = bestTag;
+                bestTag = backPointers[index * tagCount + bestTag];
+            }
+        }
+
+        private void ensureCapacity(int length, int tagCount) {
+            if (tags.length < length) {
+                int capacity = Math.max(length, tags.length * 2);
+                emissions = new float[capacity * tagCount];
+                scores = new float[capacity * tagCount];
+                backPointers = new int[capacity * tagCount];
+                tags = new int[capacity];
+                sourceChars = new int[capacity];
+                longestEnds = new int[capacity];
+            }
+        }
+    }
+}
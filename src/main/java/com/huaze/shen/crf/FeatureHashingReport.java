@@ -0,0 +1,104 @@
+package com.huaze.shen.crf;
+
+import com.huaze.shen.feature.FeatureExtractor;
+import com.huaze.shen.feature.FeatureHasher;
+import com.huaze.shen.feature.FeatureKey;
+import com.huaze.shen.feature.IntFeatureExtractor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author Huaze Shen
+ * @date 2026-10-18
+ *
+ * 比较特征哈希与精确特征表：对每个槽位位数统计特征表中的特征落到共享槽位的比例，
+ * 并在同一份训练集上分别训练、在留出的句子上计算F1。
+ * 词表、词二元组和精确特征表只从训练部分构建，留出的句子中的词不会通过词特征泄漏到评估中。
+ */
+public class FeatureHashingReport {
+    private FeatureHashingReport() {
+    }
+
+    /**
+     * 特征表中与其他特征共用槽位的特征所占的比例
+     */
+    public static double collisionRate(FeatureHasher featureHasher, long[] featureKeys) {
+        int[] slotCounts = new int[featureHasher.dimension()];
+        for (long key : featureKeys) {
+            slotCounts[FeatureHasher.slot(featureHasher.feature(key))]++;
+        }
+        long collided = 0;
+        for (int count : slotCounts) {
+            if (count > 1) {
+                collided += count;
+            }
+        }
+        return featureKeys.length == 0 ? 0 : (double) collided / featureKeys.length;
+    }
+
+    /**
+     * 参数：训练轮数(不给时用CrfTrainer的默认值)，之后为要比较的槽位位数
+     */
+    public static void main(String[] args) throws IOException {
+        String resourcesDir = "src/main/resources/";
+        String trainFile = resourcesDir + "data/pku_test_gold.utf8";
+        int epochs = args.length > 0 ? Integer.parseInt(args[0]) : new CrfTrainer().getEpochs();
+        int[] bitsList = {16, 18, 20};
+        if (args.length > 1) {
+            bitsList = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) {
+                bitsList[i - 1] = Integer.parseInt(args[i]);
+            }
+        }
+        // 最后10%的句子留出评估，其余写入临时文件作为训练集
+        List<String> lines = new ArrayList<>();
+        for (String line : Files.readAllLines(Paths.get(trainFile))) {
+            if (line.trim().length() > 0) {
+                lines.add(line);
+            }
+        }
+        int trainSentences = lines.size() * 9 / 10;
+        List<String> heldOut = lines.subList(trainSentences, lines.size());
+        File trainSplitFile = File.createTempFile("pku_train_", ".utf8");
+        trainSplitFile.deleteOnExit();
+        Files.write(trainSplitFile.toPath(), lines.subList(0, trainSentences));
+
+        FeatureExtractor featureExtractor = new FeatureExtractor(trainSplitFile.getPath());
+        IntFeatureExtractor exactExtractor = featureExtractor.createIntFeatureExtractor();
+        List<Long> keys = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : featureExtractor.getFeatureIndexMap().entrySet()) {
+            long key = FeatureKey.parse(entry.getKey(), exactExtractor.getVocabulary());
+            if (key >= 0) {
+                keys.add(key);
+            }
+        }
+        long[] featureKeys = keys.stream().mapToLong(Long::longValue).toArray();
+
+        System.out.println(String.format("exact: %d features, F1 %.4f", exactExtractor.featureCount(),
+                trainAndEvaluate(exactExtractor, trainSplitFile.getPath(), epochs, heldOut)));
+        for (int bits : bitsList) {
+            FeatureHasher featureHasher = new FeatureHasher(bits, exactExtractor.getVocabulary());
+            IntFeatureExtractor hashingExtractor = exactExtractor.copy();
+            hashingExtractor.setFeatureHasher(featureHasher);
+            System.out.println(String.format("hashing %d bits: %d slots, collision rate %.4f, F1 %.4f", bits,
+                    featureHasher.dimension(), collisionRate(featureHasher, featureKeys),
+                    trainAndEvaluate(hashingExtractor, trainSplitFile.getPath(), epochs, heldOut)));
+        }
+    }
+
+    private static double trainAndEvaluate(IntFeatureExtractor intFeatureExtractor, String trainFile, int epochs,
+                                           List<String> heldOut) throws IOException {
+        TrainingData trainingData = TrainingData.fromTextFile(intFeatureExtractor, trainFile);
+        CrfTrainer crfTrainer = new CrfTrainer();
+        crfTrainer.setEpochs(epochs);
+        CrfModel model = crfTrainer.train(trainingData);
+        CrfSegmenter crfSegmenter = new CrfSegmenter(intFeatureExtractor, model);
+        return SegmentationEvaluator.evaluate(crfSegmenter, heldOut).getF1();
+    }
+}
@@ -0,0 +1,454 @@
+package com.huaze.shen.crf;
+
+import com.huaze.shen.dict.BigramIndex;
+import com.huaze.shen.dict.BinaryFeatureDictionary;
+import com.huaze.shen.dict.DoubleArrayTrie;
+import com.huaze.shen.dict.Lexicon;
+import com.huaze.shen.dict.Vocabulary;
+import com.huaze.shen.feature.FeatureExtractor;
+import com.huaze.shen.feature.FeatureHasher;
+import com.huaze.shen.feature.IntFeatureExtractor;
+import com.huaze.shen.util.LongIntHashMap;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author Huaze Shen
+ * @date 2026-10-18
+ *
+ * 模型快照：把分词需要的全部数据(词表、双数组Trie、词二元组、特征表、标签和权重)写入一个带版本的文件，
+ * 载入时不读训练语料，也不重新构建任何结构。打开时只读文件头和节表，每一节在第一次用到时才映射，
+ * 解析出的对象随后被缓存；量化权重直接在映射页上使用，其余各节整块复制成数组，耗时只与该节大小有关。
+ *
+ * 文件格式(大端)：
+ * magic(int) version(int) sectionCount(int) wordMin(int) wordMax(int) hashBits(int)
+ * 节表：sectionCount个(id(int) offset(long) length(long))，之后是各节内容，每节从8字节对齐的位置开始。
+ * 特征哈希模式下hashBits大于0，没有特征表一节；字符归一化使用CharNormalizer.getDefault()。
+ */
+public class ModelSnapshot implements Closeable {
+    public static final int MAGIC = 0x504b5353;
+    public static final int VERSION = 1;
+
+    public static final int VOCABULARY = 1;
+    public static final int PREFIX_TRIE = 2;
+    public static final int SUFFIX_TRIE = 3;
+    public static final int BIGRAMS = 4;
+    public static final int FEATURE_KEYS = 5;
+    public static final int FEATURE_DICTIONARY = 6;
+    public static final int TAGS = 7;
+    public static final int WEIGHTS = 8;
+
+    private static final int HEADER_BYTES = 24;
+    private static final int SECTION_ENTRY_BYTES = 20;
+
+    private String file;
+    private FileChannel fileChannel;
+    private int wordMin;
+    private int wordMax;
+    private int hashBits;
+    private int[] sectionIds;
+    private long[] sectionOffsets;
+    private long[] sectionLengths;
+    private ByteBuffer[] sections;
+
+    private Vocabulary vocabulary;
+    private Lexicon lexicon;
+    private LongIntHashMap featureIndexMap;
+    private BinaryFeatureDictionary featureDictionary;
+    private List<String> tags;
+    private ModelWeights model;
+
+    private ModelSnapshot(String file, FileChannel fileChannel) throws IOException {
+        this.file = file;
+        this.fileChannel = fileChannel;
+        ByteBuffer header = read(0, HEADER_BYTES);
+        if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            throw new IOException("not a model snapshot file: " + file);
+        }
+        int sectionCount = header.getInt(8);
+        wordMin = header.getInt(12);
+        wordMax = header.getInt(16);
+        hashBits = header.getInt(20);
+        ByteBuffer table = read(HEADER_BYTES, sectionCount * SECTION_ENTRY_BYTES);
+        sectionIds = new int[sectionCount];
+        sectionOffsets = new long[sectionCount];
+        sectionLengths = new long[sectionCount];
+        sections = new ByteBuffer[sectionCount];
+        for (int i = 0; i < sectionCount; i++) {
+            sectionIds[i] = table.getInt();
+            sectionOffsets[i] = table.getLong();
+            sectionLengths[i] = table.getLong();
+            if (sectionOffsets[i] + sectionLengths[i] > fileChannel.size()) {
+                throw new IOException("truncated model snapshot file: " + file);
+            }
+        }
+    }
+
+    /**
+     * 打开快照文件，只读取文件头和节表。关闭前尚未用到的节之后无法再载入
+     */
+    public static ModelSnapshot open(String file) throws IOException {
+        FileChannel fileChannel = FileChannel.open(Paths.get(file), StandardOpenOption.READ);
+        try {
+            return new ModelSnapshot(file, fileChannel);
+        } catch (IOException e) {
+            fileChannel.close();
+            throw e;
+        }
+    }
+
+    public int getWordMin() {
+        return wordMin;
+    }
+
+    public int getWordMax() {
+        return wordMax;
+    }
+
+    /**
+     * 特征哈希的槽位位数，特征表模式下为0
+     */
+    public int getHashBits() {
+        return hashBits;
+    }
+
+    public boolean hasSection(int id) {
+        return indexOf(id) >= 0;
+    }
+
+    public synchronized Vocabulary getVocabulary() throws IOException {
+        if (vocabulary == null) {
+            ByteBuffer buffer = section(VOCABULARY);
+            int count = buffer.getInt(0);
+            int[] offsets = new int[count + 1];
+            buffer.position(Integer.BYTES);
+            buffer.asIntBuffer().get(offsets);
+            char[] chars = new char[offsets[count]];
+            buffer.position(Integer.BYTES * (count + 2));
+            buffer.asCharBuffer().get(chars);
+            Vocabulary vocabulary = new Vocabulary();
+            for (int id = 0; id < count; id++) {
+                vocabulary.add(new String(chars, offsets[id], offsets[id + 1] - offsets[id]));
+            }
+            this.vocabulary = vocabulary;
+        }
+        return vocabulary;
+    }
+
+    public synchronized Lexicon getLexicon() throws IOException {
+        if (lexicon == null) {
+            ByteBuffer buffer = section(BIGRAMS);
+            int size = buffer.getInt(0);
+            long[] table = new long[buffer.getInt(4)];
+            buffer.position(2 * Integer.BYTES);
+            buffer.asLongBuffer().get(table);
+            lexicon = new Lexicon(getVocabulary(), new BigramIndex(table, size),
+                    readTrie(section(PREFIX_TRIE)), readTrie(section(SUFFIX_TRIE)));
+        }
+        return lexicon;
+    }
+
+    /**
+     * 特征key到下标的映射，特征哈希模式下返回null
+     */
+    public synchronized LongIntHashMap getFeatureIndexMap() throws IOException {
+        if (featureIndexMap == null && hasSection(FEATURE_KEYS)) {
+            ByteBuffer buffer = section(FEATURE_KEYS);
+            int size = buffer.getInt(0);
+            long[] keys = new long[buffer.getInt(4)];
+            int[] values = new int[keys.length];
+            buffer.position(2 * Integer.BYTES);
+            buffer.asLongBuffer().get(keys);
+            buffer.position(2 * Integer.BYTES + keys.length * Long.BYTES);
+            buffer.asIntBuffer().get(values);
+            featureIndexMap = new LongIntHashMap(keys, values, size);
+        }
+        return featureIndexMap;
+    }
+
+    /**
+     * 字符串特征到下标的字典，直接在映射页上查询；写入时没有提供时返回null
+     */
+    public synchronized BinaryFeatureDictionary getFeatureDictionary() throws IOException {
+        if (featureDictionary == null && hasSection(FEATURE_DICTIONARY)) {
+            featureDictionary = BinaryFeatureDictionary.wrap(section(FEATURE_DICTIONARY));
+        }
+        return featureDictionary;
+    }
+
+    /**
+     * 按下标排列的标签名
+     */
+    public synchronized List<String> getTags() throws IOException {
+        if (tags == null) {
+            ByteBuffer buffer = section(TAGS);
+            String[] names = new String[buffer.getInt(0)];
+            buffer.position(Integer.BYTES);
+            for (int i = 0; i < names.length; i++) {
+                char[] chars = new char[buffer.getShort()];
+                buffer.asCharBuffer().get(chars);
+                buffer.position(buffer.position() + chars.length * Character.BYTES);
+                names[i] = new String(chars);
+            }
+            tags = Collections.unmodifiableList(Arrays.asList(names));
+        }
+        return tags;
+    }
+
+    /**
+     * 权重：float模型复制到堆上，量化模型直接使用映射的缓冲区
+     */
+    public synchronized ModelWeights getModel() throws IOException {
+        if (model == null) {
+            ByteBuffer buffer = section(WEIGHTS);
+            model = buffer.getInt(0) == QuantizedModel.MAGIC ? QuantizedModel.wrap(buffer) : CrfModel.read(buffer);
+        }
+        return model;
+    }
+
+    public IntFeatureExtractor createIntFeatureExtractor() throws IOException {
+        IntFeatureExtractor intFeatureExtractor =
+                new IntFeatureExtractor(getLexicon(), getFeatureIndexMap(), wordMin, wordMax);
+        if (hashBits > 0) {
+            intFeatureExtractor.setFeatureHasher(new FeatureHasher(hashBits, getVocabulary()));
+        }
+        return intFeatureExtractor;
+    }
+
+    /**
+     * 关闭文件，已经映射的节和解析出的对象仍然可用
+     */
+    @Override
+    public void close() throws IOException {
+        fileChannel.close();
+    }
+
+    /**
+     * 用FeatureExtractor的词典、特征表和标签以及训练好的模型写出快照，权重不量化
+     */
+    public static void write(String file, FeatureExtractor featureExtractor, CrfModel model) throws IOException {
+        write(file, featureExtractor, featureExtractor.createIntFeatureExtractor(), model, 0);
+    }
+
+    /**
+     * intFeatureExtractor提供词典和特征key表(或特征哈希的位数)，featureExtractor提供字符串特征表和标签。
+     * blockSize大于0时权重按QuantizedModel的格式量化写出。
+     */
+    public static void write(String file, FeatureExtractor featureExtractor, IntFeatureExtractor intFeatureExtractor,
+                             CrfModel model, int blockSize) throws IOException {
+        Lexicon lexicon = intFeatureExtractor.getLexicon();
+        FeatureHasher featureHasher = intFeatureExtractor.getFeatureHasher();
+        List<Integer> ids = new ArrayList<>();
+        List<SectionWriter> writers = new ArrayList<>();
+        ids.add(VOCABULARY);
+        writers.add(dataOutput -> writeVocabulary(lexicon.getVocabulary(), dataOutput));
+        ids.add(PREFIX_TRIE);
+        writers.add(dataOutput -> writeTrie(lexicon.getPrefixTrie(), dataOutput));
+        ids.add(SUFFIX_TRIE);
+        writers.add(dataOutput -> writeTrie(lexicon.getSuffixTrie(), dataOutput));
+        ids.add(BIGRAMS);
+        writers.add(dataOutput -> {
+            long[] table = lexicon.getBigramIndex().getTable();
+            dataOutput.writeInt(lexicon.getBigramIndex().size());
+            dataOutput.writeInt(table.length);
+            for (long bigram : table) {
+                dataOutput.writeLong(bigram);
+            }
+        });
+        if (featureHasher == null) {
+            ids.add(FEATURE_KEYS);
+            writers.add(dataOutput -> {
+                LongIntHashMap featureIndexMap = intFeatureExtractor.getFeatureIndexMap();
+                dataOutput.writeInt(featureIndexMap.size());
+                dataOutput.writeInt(featureIndexMap.getKeys().length);
+                for (long key : featureIndexMap.getKeys()) {
+                    dataOutput.writeLong(key);
+                }
+                for (int value : featureIndexMap.getValues()) {
+                    dataOutput.writeInt(value);
+                }
+            });
+            ids.add(FEATURE_DICTIONARY);
+            writers.add(dataOutput -> {
+                Map<String, Integer> featureIndexMap = featureExtractor.getFeatureIndexMap();
+                List<String> features = new ArrayList<>(featureIndexMap.keySet());
+                int[] values = new int[features.size()];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = featureIndexMap.get(features.get(i));
+                }
+                BinaryFeatureDictionary.write(features, values, dataOutput);
+            });
+        }
+        ids.add(TAGS);
+        writers.add(dataOutput -> {
+            Map<String, Integer> tagIndexMap = featureExtractor.getTagIndexMap();
+            String[] names = new String[tagIndexMap.size()];
+            for (Map.Entry<String, Integer> entry : tagIndexMap.entrySet()) {
+                names[entry.getValue()] = entry.getKey();
+            }
+            dataOutput.writeInt(names.length);
+            for (String name : names) {
+                dataOutput.writeShort(name.length());
+                dataOutput.writeChars(name);
+            }
+        });
+        ids.add(WEIGHTS);
+        writers.add(dataOutput -> {
+            if (blockSize > 0) {
+                QuantizedModel.write(model, dataOutput, blockSize);
+            } else {
+                model.write(dataOutput);
+            }
+        });
+
+        int tableBytes = HEADER_BYTES + ids.size() * SECTION_ENTRY_BYTES;
+        long[] offsets = new long[ids.size()];
+        long[] lengths = new long[ids.size()];
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.setLength(0);
+            FileChannel fileChannel = randomAccessFile.getChannel();
+            // 不关闭这个流，文件由randomAccessFile关闭
+            DataOutputStream dataOutputStream = new DataOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(fileChannel), 1 << 16));
+            long position = align(tableBytes);
+            fileChannel.position(position);
+            for (int i = 0; i < ids.size(); i++) {
+                writers.get(i).write(dataOutputStream);
+                dataOutputStream.flush();
+                offsets[i] = position;
+                lengths[i] = fileChannel.position() - position;
+                position = align(fileChannel.position());
+                while (fileChannel.position() < position) {
+                    dataOutputStream.writeByte(0);
+                    dataOutputStream.flush();
+                }
+            }
+            randomAccessFile.seek(0);
+            randomAccessFile.writeInt(MAGIC);
+            randomAccessFile.writeInt(VERSION);
+            randomAccessFile.writeInt(ids.size());
+            randomAccessFile.writeInt(intFeatureExtractor.getWordMin());
+            randomAccessFile.writeInt(intFeatureExtractor.getWordMax());
+            randomAccessFile.writeInt(featureHasher == null ? 0 : featureHasher.getBits());
+            for (int i = 0; i < ids.size(); i++) {
+                randomAccessFile.writeInt(ids.get(i));
+                randomAccessFile.writeLong(offsets[i]);
+                randomAccessFile.writeLong(lengths[i]);
+            }
+        }
+    }
+
+    private interface SectionWriter {
+        void write(DataOutput dataOutput) throws IOException;
+    }
+
+    private static void writeVocabulary(Vocabulary vocabulary, DataOutput dataOutput) throws IOException {
+        dataOutput.writeInt(vocabulary.size());
+        int offset = 0;
+        dataOutput.writeInt(offset);
+        for (int id = 0; id < vocabulary.size(); id++) {
+            offset += vocabulary.word(id).length();
+            dataOutput.writeInt(offset);
+        }
+        for (int id = 0; id < vocabulary.size(); id++) {
+            dataOutput.writeChars(vocabulary.word(id));
+        }
+    }
+
+    private static void writeTrie(DoubleArrayTrie trie, DataOutput dataOutput) throws IOException {
+        dataOutput.writeInt(trie.getBase().length);
+        for (int value : trie.getBase()) {
+            dataOutput.writeInt(value);
+        }
+        for (int value : trie.getCheck()) {
+            dataOutput.writeInt(value);
+        }
+    }
+
+    private static DoubleArrayTrie readTrie(ByteBuffer buffer) {
+        int size = buffer.getInt(0);
+        int[] base = new int[size];
+        int[] check = new int[size];
+        buffer.position(Integer.BYTES);
+        IntBuffer intBuffer = buffer.asIntBuffer();
+        intBuffer.get(base).get(check);
+        return new DoubleArrayTrie(base, check);
+    }
+
+    /**
+     * 第一次用到时映射节id，节不存在时抛出IOException
+     */
+    private ByteBuffer section(int id) throws IOException {
+        int index = indexOf(id);
+        if (index < 0) {
+            throw new IOException("missing section " + id + " in model snapshot file: " + file);
+        }
+        if (sections[index] == null) {
+            sections[index] = fileChannel.map(FileChannel.MapMode.READ_ONLY, sectionOffsets[index],
+                    sectionLengths[index]);
+        }
+        return sections[index].duplicate();
+    }
+
+    private int indexOf(int id) {
+        for (int i = 0; i < sectionIds.length; i++) {
+            if (sectionIds[i] == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (fileChannel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("truncated model snapshot file: " + file);
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static long align(long position) {
+        return (position + 7) & ~7L;
+    }
+
+    /**
+     * 参数：模型文件、快照文件、量化块大小(0为不量化)。用训练语料和模型写出快照，
+     * 之后像冷启动一样打开快照并统计第一次分词前的耗时
+     */
+    public static void main(String[] args) throws IOException {
+        String resourcesDir = "src/main/resources/";
+        String trainFile = resourcesDir + "data/pku_test_gold.utf8";
+        String featureSaveDir = resourcesDir + "data/feature_save/";
+        String modelFile = args.length > 0 ? args[0] : featureSaveDir + "crf_model.bin";
+        String snapshotFile = args.length > 1 ? args[1] : featureSaveDir + "model.snapshot";
+        int blockSize = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+        long start = System.nanoTime();
+        FeatureExtractor featureExtractor = new FeatureExtractor(trainFile);
+        CrfModel model = CrfModel.load(modelFile);
+        System.out.printf("from corpus: %.0f ms%n", (System.nanoTime() - start) / 1e6);
+        write(snapshotFile, featureExtractor, featureExtractor.createIntFeatureExtractor(), model, blockSize);
+        System.out.println("snapshot bytes: " + new File(snapshotFile).length());
+
+        start = System.nanoTime();
+        try (ModelSnapshot snapshot = open(snapshotFile)) {
+            CrfSegmenter crfSegmenter = new CrfSegmenter(snapshot);
+            List<String> words = crfSegmenter.segment("北京大学的分词工具");
+            System.out.printf("from snapshot: %.0f ms to first segmentation %s%n",
+                    (System.nanoTime() - start) / 1e6, words);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.huaze.shen.crf;
+
+/**
+ * @author Huaze Shen
+ * @date 2026-10-18
+ *
+ * 解码时读取的模型参数。发射权重按特征取一行累加，不要求整张权重表以float[]的形式放在堆上，
+ * 实现可以是堆上的CrfModel，也可以是映射到文件的QuantizedModel。实现必须可以被多个线程并发读取。
+ */
+public interface ModelWeights {
+    int getFeatureCount();
+
+    int getTagCount();
+
+    /**
+     * 把特征feature在各标签上的发射权重加到emissions[offset, offset + tagCount)。
+     * feature为负数时是特征哈希模式下符号为负的槽位~feature，减去该槽位的权重。
+     */
+    void addEmissions(int feature, float[] emissions, int offset);
+
+    /**
+     * 转移权重，transitions[from * tagCount + to]
+     */
+    float[] getTransitions();
+}
@@ -0,0 +1,167 @@
+package com.huaze.shen.crf;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * @author Huaze Shen
+ * @date 2026-10-18
+ *
+ * int8量化的CRF模型，通过只读映射的ByteBuffer访问，发射权重不复制到堆上，
+ * 同一台机器上的多个进程映射同一个文件时共享操作系统页缓存中的一份数据。
+ * 发射权重按特征排列成一整块，每blockSize个特征共用一个缩放系数(块内最大绝对值 / 127)，
+ * 解码时按w = q * scale即时反量化。转移权重只有tagCount * tagCount个，以float保存并载入堆上。
+ *
+ * 文件格式(大端)：
+ * magic(int) version(int) featureCount(int) tagCount(int) blockSize(int)
+ * transitions(float[tagCount * tagCount]) scales(float[blockCount]) weights(byte[featureCount * tagCount])
+ */
+public class QuantizedModel implements ModelWeights {
+    public static final int MAGIC = 0x504b5138;
+    public static final int VERSION = 1;
+    public static final int DEFAULT_BLOCK_SIZE = 64;
+    static final int HEADER_BYTES = 20;
+
+    private ByteBuffer buffer;
+    private int featureCount;
+    private int tagCount;
+    private int blockSize;
+    private float[] transitions;
+    private int scalesOffset;
+    private int weightsOffset;
+
+    private QuantizedModel(ByteBuffer buffer, String file) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("not a quantized crf model file: " + file);
+        }
+        featureCount = buffer.getInt(8);
+        tagCount = buffer.getInt(12);
+        blockSize = buffer.getInt(16);
+        transitions = new float[tagCount * tagCount];
+        int position = HEADER_BYTES;
+        for (int i = 0; i < transitions.length; i++) {
+            transitions[i] = buffer.getFloat(position);
+            position += Float.BYTES;
+        }
+        scalesOffset = position;
+        weightsOffset = scalesOffset + blockCount(featureCount, blockSize) * Float.BYTES;
+        if ((long) weightsOffset + (long) featureCount * tagCount != buffer.capacity()) {
+            throw new IOException("truncated quantized crf model file: " + file);
+        }
+    }
+
+    /**
+     * 以只读方式映射模型文件，返回后文件句柄即被关闭，映射一直有效
+     */
+    public static QuantizedModel load(String file) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+             FileChannel fileChannel = randomAccessFile.getChannel()) {
+            MappedByteBuffer mappedByteBuffer = fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, fileChannel.size());
+            return new QuantizedModel(mappedByteBuffer, file);
+        }
+    }
+
+    /**
+     * 使用已经映射好的缓冲区(如快照文件中的一节)，从position开始解析，直到缓冲区末尾
+     */
+    public static QuantizedModel wrap(ByteBuffer buffer) throws IOException {
+        return new QuantizedModel(buffer.slice(), "buffer");
+    }
+
+    /**
+     * 把float模型量化后写入file
+     */
+    public static void save(CrfModel model, String file, int blockSize) throws IOException {
+        try (DataOutputStream dataOutputStream = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+            write(model, dataOutputStream, blockSize);
+        }
+    }
+
+    public static void write(CrfModel model, DataOutput dataOutput, int blockSize) throws IOException {
+        int featureCount = model.getFeatureCount();
+        int tagCount = model.getTagCount();
+        float[] weights = model.getWeights();
+        int blockCount = blockCount(featureCount, blockSize);
+        float[] scales = new float[blockCount];
+        for (int block = 0; block < blockCount; block++) {
+            int from = block * blockSize * tagCount;
+            int to = Math.min(featureCount, (block + 1) * blockSize) * tagCount;
+            float maxAbs = 0;
+            for (int i = from; i < to; i++) {
+                maxAbs = Math.max(maxAbs, Math.abs(weights[i]));
+            }
+            scales[block] = maxAbs / 127;
+        }
+        dataOutput.writeInt(MAGIC);
+        dataOutput.writeInt(VERSION);
+        dataOutput.writeInt(featureCount);
+        dataOutput.writeInt(tagCount);
+        dataOutput.writeInt(blockSize);
+        for (float transition : model.getTransitions()) {
+            dataOutput.writeFloat(transition);
+        }
+        for (float scale : scales) {
+            dataOutput.writeFloat(scale);
+        }
+        for (int i = 0; i < featureCount * tagCount; i++) {
+            float scale = scales[i / tagCount / blockSize];
+            int quantized = scale == 0 ? 0 : Math.round(weights[i] / scale);
+            dataOutput.writeByte(Math.max(-127, Math.min(127, quantized)));
+        }
+    }
+
+    @Override
+    public int getFeatureCount() {
+        return featureCount;
+    }
+
+    @Override
+    public int getTagCount() {
+        return tagCount;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    @Override
+    public void addEmissions(int feature, float[] emissions, int offset) {
+        float sign = 1;
+        if (feature < 0) {
+            feature = ~feature;
+            sign = -1;
+        }
+        float scale = sign * buffer.getFloat(scalesOffset + feature / blockSize * Float.BYTES);
+        int row = weightsOffset + feature * tagCount;
+        for (int tag = 0; tag < tagCount; tag++) {
+            emissions[offset + tag] += buffer.get(row + tag) * scale;
+        }
+    }
+
+    @Override
+    public float[] getTransitions() {
+        return transitions;
+    }
+
+    private static int blockCount(int featureCount, int blockSize) {
+        return (featureCount + blockSize - 1) / blockSize;
+    }
+
+    /**
+     * 把CrfTrainer输出的float模型转换成量化模型
+     */
+    public static void main(String[] args) throws IOException {
+        String featureSaveDir = "src/main/resources/data/feature_save/";
+        String modelFile = args.length > 0 ? args[0] : featureSaveDir + "crf_model.bin";
+        String quantizedFile = args.length > 1 ? args[1] : featureSaveDir + "crf_model.q8";
+        int blockSize = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_BLOCK_SIZE;
+        CrfModel model = CrfModel.load(modelFile);
+        save(model, quantizedFile, blockSize);
+        System.out.println("features: " + model.getFeatureCount() + ", block size: " + blockSize
+                + ", bytes: " + new File(quantizedFile).length());
+    }
+}
@@ -0,0 +1,302 @@
+package com.huaze.shen.crf;
+
+import com.huaze.shen.feature.IntFeatureExtractor;
+import com.huaze.shen.metrics.Counter;
+
+import java.util.HashMap;
+
+/**
+ * @author Huaze Shen
+ * @date 2026-10-18
+ *
+ * 分词结果缓存：以归一化后字符id序列的64位哈希为键，值为每个词的结束位置(char[]，最后一项等于句子长度)，
+ * 不保存字符串。分词只依赖归一化后的字符，所以归一化相同的句子可以共用边界，输出的词仍然取自原句。
+ *
+ * 按哈希分成若干段，每段一把锁、一份字节预算，段内采用分段LRU淘汰：新条目进入试用区，
+ * 再次命中后升入保护区(占段预算的80%)，保护区溢出时最久未用的条目降回试用区，
+ * 超出预算时先淘汰试用区最久未用的条目，只出现一次的句子不会挤掉反复出现的句子。
+ */
+public class SegmentationCache {
+    /** 每个条目除边界数组外的估算开销：链表节点、HashMap节点、Long键和数组头 */
+    private static final int ENTRY_OVERHEAD_BYTES = 112;
+    private static final int DEFAULT_SEGMENTS = 16;
+    private static final double PROTECTED_RATIO = 0.8;
+
+    private Segment[] segments;
+    private int segmentMask;
+    private long maxBytes;
+    private Counter hitCounter = new Counter();
+    private Counter missCounter = new Counter();
+    private Counter evictionCounter = new Counter();
+
+    public SegmentationCache(long maxBytes) {
+        this(maxBytes, DEFAULT_SEGMENTS);
+    }
+
+    /**
+     * segmentCount向上取整为2的幂，段数越多锁竞争越少，但每段的预算越小
+     */
+    public SegmentationCache(long maxBytes, int segmentCount) {
+        int count = Integer.highestOneBit(Math.max(1, segmentCount - 1) << 1);
+        this.maxBytes = maxBytes;
+        this.segments = new Segment[count];
+        this.segmentMask = count - 1;
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment(maxBytes / count);
+        }
+    }
+
+    /**
+     * intFeatureExtractor当前句子归一化字符id的64位哈希，长度参与计算
+     */
+    public static long hash(IntFeatureExtractor intFeatureExtractor) {
+        int length = intFeatureExtractor.length();
+        long hash = 0x9e3779b97f4a7c15L ^ length;
+        for (int i = 0; i < length; i++) {
+            hash = (hash ^ intFeatureExtractor.charId(i)) * 0x100000001b3L;
+            hash = Long.rotateLeft(hash, 27);
+        }
+        return mix(hash);
+    }
+
+    /**
+     * 当前句子原始字符(去掉空格)的64位哈希。分词结果不只取决于归一化字符时(如设置了按原始字符匹配的用户词典)使用
+     */
+    public static long sourceHash(IntFeatureExtractor intFeatureExtractor) {
+        int length = intFeatureExtractor.length();
+        long hash = 0xc2b2ae3d27d4eb4fL ^ length;
+        for (int i = 0; i < length; i++) {
+            hash = (hash ^ intFeatureExtractor.sourceChar(i)) * 0x100000001b3L;
+            hash = Long.rotateLeft(hash, 27);
+        }
+        return mix(hash);
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * 查询长度为length的句子的词边界，未命中返回null。返回的数组被缓存共享，不能修改。
+     */
+    public char[] get(long hash, int length) {
+        char[] ends = segmentOf(hash).get(hash, length);
+        if (ends == null) {
+            missCounter.increment();
+        } else {
+            hitCounter.increment();
+        }
+        return ends;
+    }
+
+    /**
+     * 写入词边界，数组归缓存所有。单条超过段预算的句子不缓存。
+     */
+    public void put(long hash, char[] ends) {
+        if (ends.length == 0) {
+            return;
+        }
+        segmentOf(hash).put(hash, ends);
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public int getSegmentCount() {
+        return segments.length;
+    }
+
+    public Stats stats() {
+        long size = 0;
+        long bytes = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.map.size();
+                bytes += segment.probationBytes + segment.protectedBytes;
+            }
+        }
+        return new Stats(hitCounter.sum(), missCounter.sum(), evictionCounter.sum(), size, bytes);
+    }
+
+    private Segment segmentOf(long hash) {
+        return segments[(int) (hash >>> 32) & segmentMask];
+    }
+
+    private static long entryBytes(char[] ends) {
+        return ENTRY_OVERHEAD_BYTES + ((ends.length * Character.BYTES + 7) & ~7);
+    }
+
+    /**
+     * 缓存统计，命中率为命中次数除以查询次数
+     */
+    public static class Stats {
+        private long hitCount;
+        private long missCount;
+        private long evictionCount;
+        private long size;
+        private long bytes;
+
+        Stats(long hitCount, long missCount, long evictionCount, long size, long bytes) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.evictionCount = evictionCount;
+            this.size = size;
+            this.bytes = bytes;
+        }
+
+        public long getHitCount() {
+            return hitCount;
+        }
+
+        public long getMissCount() {
+            return missCount;
+        }
+
+        public long getEvictionCount() {
+            return evictionCount;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public double getHitRate() {
+            long requests = hitCount + missCount;
+            return requests == 0 ? 0 : (double) hitCount / requests;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("hits: %d, misses: %d, hit rate: %.4f, evictions: %d, entries: %d, bytes: %d",
+                    hitCount, missCount, getHitRate(), evictionCount, size, bytes);
+        }
+    }
+
+    private static class Node {
+        private long hash;
+        private char[] ends;
+        private long bytes;
+        private boolean protectedEntry;
+        private Node prev;
+        private Node next;
+    }
+
+    /**
+     * 一段缓存：两条带哨兵的双向链表，表头为最近使用
+     */
+    private class Segment {
+        private HashMap<Long, Node> map = new HashMap<>();
+        private Node probation = sentinel();
+        private Node protectedList = sentinel();
+        private long probationBytes;
+        private long protectedBytes;
+        private long maxBytes;
+        private long maxProtectedBytes;
+
+        Segment(long maxBytes) {
+            this.maxBytes = maxBytes;
+            this.maxProtectedBytes = (long) (maxBytes * PROTECTED_RATIO);
+        }
+
+        synchronized char[] get(long hash, int length) {
+            Node node = map.get(hash);
+            if (node == null || node.ends[node.ends.length - 1] != length) {
+                return null;
+            }
+            unlink(node);
+            if (node.protectedEntry) {
+                addFirst(protectedList, node);
+            } else {
+                probationBytes -= node.bytes;
+                protectedBytes += node.bytes;
+                node.protectedEntry = true;
+                addFirst(protectedList, node);
+                while (protectedBytes > maxProtectedBytes) {
+                    Node demoted = protectedList.prev;
+                    unlink(demoted);
+                    protectedBytes -= demoted.bytes;
+                    probationBytes += demoted.bytes;
+                    demoted.protectedEntry = false;
+                    addFirst(probation, demoted);
+                }
+            }
+            return node.ends;
+        }
+
+        synchronized void put(long hash, char[] ends) {
+            long bytes = entryBytes(ends);
+            if (bytes > maxBytes) {
+                return;
+            }
+            Node node = map.get(hash);
+            if (node != null) {
+                remove(node);
+            }
+            node = new Node();
+            node.hash = hash;
+            node.ends = ends;
+            node.bytes = bytes;
+            map.put(hash, node);
+            addFirst(probation, node);
+            probationBytes += bytes;
+            while (probationBytes + protectedBytes > maxBytes) {
+                Node victim = probation.prev != probation ? probation.prev : protectedList.prev;
+                remove(victim);
+                evictionCounter.increment();
+            }
+        }
+
+        synchronized void clear() {
+            map.clear();
+            probation = sentinel();
+            protectedList = sentinel();
+            probationBytes = 0;
+            protectedBytes = 0;
+        }
+
+        private void remove(Node node) {
+            unlink(node);
+            map.remove(node.hash);
+            if (node.protectedEntry) {
+                protectedBytes -= node.bytes;
+            } else {
+                probationBytes -= node.bytes;
+            }
+        }
+
+        private Node sentinel() {
+            Node node = new Node();
+            node.prev = node;
+            node.next = node;
+            return node;
+        }
+
+        private void addFirst(Node head, Node node) {
+            node.next = head.next;
+            node.prev = head;
+            head.next.prev = node;
+            head.next = node;
+        }
+
+        private void unlink(Node node) {
+            node.prev.next = node.next;
+            node.next.prev = node.prev;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.huaze.shen.crf;
+
+import com.huaze.shen.feature.CharNormalizer;
+import com.huaze.shen.feature.FeatureExtractor;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * @author Huaze Shen
+ * @date 2026-10-18
+ *
+ * 在以空格分词的标注语料上评估分词器：去掉空格后重新分词，按词的起止位置比较，
+ * 起止位置都相同的词算作正确，计算词级别的准确率、召回率和F1。
+ */
+public class SegmentationEvaluator {
+    private SegmentationEvaluator() {
+    }
+
+    public static Result evaluate(CrfSegmenter crfSegmenter, String goldFile) throws IOException {
+        Result result = new Result();
+        try (BufferedReader bufferedReader = new BufferedReader(new FileReader(goldFile))) {
+            String line;
+            while ((line = bufferedReader.readLine()) != null) {
+                result.add(crfSegmenter, line);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 在内存中的标注句子上评估，例如从语料中留出的一部分
+     */
+    public static Result evaluate(CrfSegmenter crfSegmenter, List<String> goldLines) {
+        Result result = new Result();
+        for (String line : goldLines) {
+            result.add(crfSegmenter, line);
+        }
+        return result;
+    }
+
+    public static class Result {
+        private long sentences;
+        private long goldWords;
+        private long predictedWords;
+        private long correctWords;
+
+        void add(CrfSegmenter crfSegmenter, String goldLine) {
+            String[] goldWords = CharNormalizer.getDefault().splitWords(goldLine);
+            if (goldWords != null) {
+                add(goldWords, crfSegmenter.segment(goldLine));
+            }
+        }
+
+        /**
+         * 两组词覆盖同一串字符，同时向前扫描两边的词结束位置，结束位置和开始位置都相同的词计为正确
+         */
+        void add(String[] gold, List<String> predicted) {
+            sentences++;
+            goldWords += gold.length;
+            predictedWords += predicted.size();
+            int goldIndex = 0;
+            int predictedIndex = 0;
+            int goldStart = 0;
+            int predictedStart = 0;
+            while (goldIndex < gold.length && predictedIndex < predicted.size()) {
+                int goldEnd = goldStart + gold[goldIndex].length();
+                int predictedEnd = predictedStart + predicted.get(predictedIndex).length();
+                if (goldStart == predictedStart && goldEnd == predictedEnd) {
+                    correctWords++;
+                }
+                if (goldEnd <= predictedEnd) {
+                    goldStart = goldEnd;
+                    goldIndex++;
+                }
+                if (predictedEnd <= goldEnd) {
+                    predictedStart = predictedEnd;
+                    predictedIndex++;
+                }
+            }
+        }
+
+        public long getSentences() {
+            return sentences;
+        }
+
+        public long getGoldWords() {
+            return goldWords;
+        }
+
+        public long getPredictedWords() {
+            return predictedWords;
+        }
+
+        public long getCorrectWords() {
+            return correctWords;
+        }
+
+        public double getPrecision() {
+            return predictedWords == 0 ? 0 : (double) correctWords / predictedWords;
+        }
+
+        public double getRecall() {
+            return goldWords == 0 ? 0 : (double) correctWords / goldWords;
+        }
+
+        public double getF1() {
+            double precision = getPrecision();
+            double recall = getRecall();
+            return precision + recall == 0 ? 0 : 2 * precision * recall / (precision + recall);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("sentences: %d, gold: %d, predicted: %d, correct: %d, P: %.4f, R: %.4f, F1: %.4f",
+                    sentences, goldWords, predictedWords, correctWords, getPrecision(), getRecall(), getF1());
+        }
+    }
+
+    /**
+     * 依次评估参数中的模型文件，以".q8"结尾的按量化模型映射，其余按float模型载入
+     */
+    public static void main(String[] args) throws IOException {
+        String resourcesDir = "src/main/resources/";
+        String trainFile = resourcesDir + "data/pku_test_gold.utf8";
+        FeatureExtractor featureExtractor = new FeatureExtractor(trainFile);
+        for (String modelFile : args) {
+            ModelWeights model = modelFile.endsWith(".q8") ? QuantizedModel.load(modelFile) : CrfModel.load(modelFile);
+            CrfSegmenter crfSegmenter = new CrfSegmenter(featureExtractor.createIntFeatureExtractor(), model);
+            long start = System.nanoTime();
+            Result result = evaluate(crfSegmenter, trainFile);
+            System.out.printf("%s: %s, %.0f ms%n", modelFile, result, (System.nanoTime() - start) / 1e6);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.huaze.shen.crf;
+
+import com.huaze.shen.corpus.BinaryCorpusReader;
+import com.huaze.shen.feature.IntFeatureExtractor;
+import com.huaze.shen.feature.TagScheme;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * @author Huaze Shen
+ * @date 2026-10-18
+ *
+ * 训练数据：所有句子的节点特征和标签平铺在几个数组中。
+ * 第s个句子的节点为[sentenceOffsets[s], sentenceOffsets[s + 1])，
+ * 第n个节点的特征为features[nodeOffsets[n], nodeOffsets[n + 1])。
+ */
+public class TrainingData {
+    private int featureCount;
+    private int tagCount;
+    private int sentenceCount;
+    private int nodeCount;
+    private int featureTotal;
+    private int[] sentenceOffsets = new int[1024];
+    private int[] nodeOffsets = new int[1 << 14];
+    private int[] features = new int[1 << 18];
+    private byte[] tags = new byte[1 << 14];
+
+    private TrainingData(int featureCount, int tagCount) {
+        this.featureCount = featureCount;
+        this.tagCount = tagCount;
+    }
+
+    /**
+     * 从FeatureExtractor.convertFeatureFileToIndexFile输出的特征下标文件和标签下标文件载入
+     */
+    public static TrainingData fromIndexFiles(String featureIndexFile, String tagIndexFile, int tagCount)
+            throws IOException {
+        try (BufferedReader featureReader = new BufferedReader(new FileReader(featureIndexFile));
+             BufferedReader tagReader = new BufferedReader(new FileReader(tagIndexFile))) {
+            int featureCount = Integer.parseInt(featureReader.readLine().trim());
+            featureReader.readLine();
+            tagReader.readLine();
+            tagReader.readLine();
+            TrainingData trainingData = new TrainingData(featureCount, tagCount);
+            String tagLine;
+            while ((tagLine = tagReader.readLine()) != null) {
+                tagLine = tagLine.trim();
+                if (tagLine.length() == 0) {
+                    continue;
+                }
+                for (String tag : tagLine.split(",")) {
+                    String featureLine = featureReader.readLine();
+                    int[] nodeFeatures = featureLine.length() == 0 ? new int[0]
+                            : Arrays.stream(featureLine.split(",")).mapToInt(Integer::parseInt).toArray();
+                    trainingData.addNode(nodeFeatures, nodeFeatures.length, Integer.parseInt(tag));
+                }
+                // 句子之间的空行
+                featureReader.readLine();
+                trainingData.endSentence();
+            }
+            return trainingData;
+        }
+    }
+
+    /**
+     * 用IntFeatureExtractor一遍读取以空格分词的文本文件，标签取自按空格切分的词。
+     * 特征哈希模式下不需要事先构建特征表，输入可以按文件任意分片。
+     */
+    public static TrainingData fromTextFile(IntFeatureExtractor intFeatureExtractor, String textFile)
+            throws IOException {
+        TrainingData trainingData = new TrainingData(intFeatureExtractor.featureCount(), TagScheme.COUNT);
+        int[] nodeFeatures = new int[intFeatureExtractor.maxNodeFeatures()];
+        byte[] tags = new byte[256];
+        try (BufferedReader bufferedReader = new BufferedReader(new FileReader(textFile))) {
+            String line;
+            while ((line = bufferedReader.readLine()) != null) {
+                int length = intFeatureExtractor.setSentence(line);
+                if (length == 0) {
+                    continue;
+                }
+                if (tags.length < length) {
+                    tags = new byte[Math.max(length, tags.length * 2)];
+                }
+                intFeatureExtractor.getTags(tags);
+                for (int index = 0; index < length; index++) {
+                    int count = intFeatureExtractor.getNodeFeatures(index, nodeFeatures);
+                    trainingData.addNode(nodeFeatures, count, tags[index]);
+                }
+                trainingData.endSentence();
+            }
+        }
+        return trainingData;
+    }
+
+    public static TrainingData fromBinaryCorpus(BinaryCorpusReader binaryCorpusReader) {
+        TrainingData trainingData =
+                new TrainingData(binaryCorpusReader.getFeatureCount(), binaryCorpusReader.getTagCount());
+        BinaryCorpusReader.Cursor cursor = binaryCorpusReader.cursor();
+        int[] nodeFeatures = new int[256];
+        while (cursor.next()) {
+            for (int index = 0; index < cursor.length(); index++) {
+                int featureCount = cursor.peekNodeFeatureCount();
+                if (nodeFeatures.length < featureCount) {
+                    nodeFeatures = new int[Math.max(featureCount, nodeFeatures.length * 2)];
+                }
+                int count = cursor.nextNode(nodeFeatures);
+                trainingData.addNode(nodeFeatures, count, cursor.tag(index));
+            }
+            trainingData.endSentence();
+        }
+        return trainingData;
+    }
+
+    public int getFeatureCount() {
+        return featureCount;
+    }
+
+    public int getTagCount() {
+        return tagCount;
+    }
+
+    public int getSentenceCount() {
+        return sentenceCount;
+    }
+
+    public int sentenceStart(int sentence) {
+        return sentenceOffsets[sentence];
+    }
+
+    public int sentenceEnd(int sentence) {
+        return sentenceOffsets[sentence + 1];
+    }
+
+    public int nodeStart(int node) {
+        return nodeOffsets[node];
+    }
+
+    public int nodeEnd(int node) {
+        return nodeOffsets[node + 1];
+    }
+
+    public int feature(int position) {
+        return features[position];
+    }
+
+    public int tag(int node) {
+        return tags[node];
+    }
+
+    /**
+     * 取出[from, to)范围内的句子作为新的数据集，例如划分训练集和开发集
+     */
+    public TrainingData subset(int from, int to) {
+        TrainingData subset = new TrainingData(featureCount, tagCount);
+        int[] nodeFeatures = new int[64];
+        for (int sentence = from; sentence < to; sentence++) {
+            for (int node = sentenceStart(sentence); node < sentenceEnd(sentence); node++) {
+                int count = nodeEnd(node) - nodeStart(node);
+                if (nodeFeatures.length < count) {
+                    nodeFeatures = new int[count];
+                }
+                System.arraycopy(features, nodeStart(node), nodeFeatures, 0, count);
+                subset.addNode(nodeFeatures, count, tags[node]);
+            }
+            subset.endSentence();
+        }
+        return subset;
+    }
+
+    private void addNode(int[] nodeFeatures, int count, int tag) {
+        if (nodeCount + 2 > nodeOffsets.length) {
+            nodeOffsets = Arrays.copyOf(nodeOffsets, nodeOffsets.length * 2);
+            tags = Arrays.copyOf(tags, nodeOffsets.length);
+        }
+        if (featureTotal + count > features.length) {
+            features = Arrays.copyOf(features, Math.max(featureTotal + count, features.length * 2));
+        }
+        System.arraycopy(nodeFeatures, 0, features, featureTotal, count);
+        featureTotal += count;
+        tags[nodeCount] = (byte) tag;
+        nodeCount++;
+        nodeOffsets[nodeCount] = featureTotal;
+    }
+
+    private void endSentence() {
+        if (sentenceCount + 2 > sentenceOffsets.length) {
+            sentenceOffsets = Arrays.copyOf(sentenceOffsets, sentenceOffsets.length * 2);
+        }
+        sentenceCount++;
+        sentenceOffsets[sentenceCount] = nodeCount;
+    }
+}
@@ -0,0 +1,127 @@
+package com.huaze.shen.dict;
+
+import java.util.Arrays;
+
+/**
+ * @author Huaze Shen
+ * @date 2026-10-18
+ *
+ * 词二元组集合：两个词id打包成一个long，存放在开放寻址的long数组中，查询不构造字符串
+ */
+public class BigramIndex {
+    private static final long EMPTY = -1L;
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private long[] table;
+    private int size;
+    private int mask;
+
+    public BigramIndex() {
+        this(16);
+    }
+
+    public BigramIndex(int expectedSize) {
+        int capacity = 16;
+        while (capacity * LOAD_FACTOR < expectedSize) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    /**
+     * 直接使用已经排布好的哈希表(如从快照载入)，长度必须是2的幂
+     */
+    public BigramIndex(long[] table, int size) {
+        this.table = table;
+        this.size = size;
+        this.mask = table.length - 1;
+    }
+
+    public static long pack(int left, int right) {
+        return ((long) left << 32) | (right & 0xffffffffL);
+    }
+
+    public static int left(long bigram) {
+        return (int) (bigram >>> 32);
+    }
+
+    public static int right(long bigram) {
+        return (int) bigram;
+    }
+
+    public boolean add(int left, int right) {
+        long bigram = pack(left, right);
+        int slot = slotOf(bigram);
+        if (table[slot] == bigram) {
+            return false;
+        }
+        table[slot] = bigram;
+        size++;
+        if (size > table.length * LOAD_FACTOR) {
+            rehash();
+        }
+        return true;
+    }
+
+    public boolean contains(int left, int right) {
+        long bigram = pack(left, right);
+        return table[slotOf(bigram)] == bigram;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 按哈希表中的顺序返回所有打包后的二元组
+     */
+    public long[] toArray() {
+        long[] bigrams = new long[size];
+        int count = 0;
+        for (long bigram : table) {
+            if (bigram != EMPTY) {
+                bigrams[count++] = bigram;
+            }
+        }
+        return bigrams;
+    }
+
+    public long[] getTable() {
+        return table;
+    }
+
+    public long estimateBytes() {
+        return (long) table.length * Long.BYTES;
+    }
+
+    private int slotOf(long bigram) {
+        int slot = mix(bigram) & mask;
+        while (table[slot] != EMPTY && table[slot] != bigram) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash() {
+        long[] oldTable = table;
+        allocate(table.length << 1);
+        for (long bigram : oldTable) {
+            if (bigram != EMPTY) {
+                table[slotOf(bigram)] = bigram;
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        table = new long[capacity];
+        Arrays.fill(table, EMPTY);
+        mask = capacity - 1;
+    }
+
+    private static int mix(long bigram) {
+        bigram ^= bigram >>> 33;
+        bigram *= 0xff51afd7ed558ccdL;
+        bigram ^= bigram >>> 33;
+        return (int) bigram;
+    }
+}
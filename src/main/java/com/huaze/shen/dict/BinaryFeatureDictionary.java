@@ -0,0 +1,325 @@
+package com.huaze.shen.dict;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * @author Huaze Shen
+ * @date 2026-10-18
+ *
+ * 二进制特征字典：特征字符串上的完美哈希(按桶位移的CHD方法)加32位指纹校验表。
+ * 整个文件用FileChannel.map映射后直接在映射页上查询，不在堆中还原特征表，
+ * 同一台机器上的多个进程共享页缓存。
+ *
+ * 槽位数为特征数的100/99倍左右，空槽的值为-1。槽位恰好等于特征数时最后放置的桶只剩一个空槽，
+ * 平均要试约n个位移，上千万特征时很容易超出位移上限；留1%的空槽后每个桶最多试约100个位移。
+ *
+ * 文件格式(大端)：
+ * magic(int) version(int) size(int) bucketCount(int) slotCount(int) seed(long)
+ * displacements(int[bucketCount]) fingerprints(int[slotCount]) values(int[slotCount])
+ * 版本1没有slotCount，槽位数等于size，仍可读取。
+ */
+public class BinaryFeatureDictionary {
+    public static final int MAGIC = 0x504b4644;
+    public static final int VERSION = 2;
+
+    private static final int HEADER_BYTES = 28;
+    private static final int VERSION_1_HEADER_BYTES = 24;
+    private static final double LOAD_FACTOR = 0.99;
+    private static final int KEYS_PER_BUCKET = 3;
+    private static final int MAX_DISPLACEMENT = 1 << 24;
+    private static final int MAX_SEEDS = 16;
+
+    private ByteBuffer buffer;
+    private int size;
+    private int bucketCount;
+    private int slotCount;
+    private long seed;
+    private int displacementOffset;
+    private int fingerprintOffset;
+    private int valueOffset;
+
+    private BinaryFeatureDictionary(ByteBuffer buffer) {
+        this.buffer = buffer;
+        int start = buffer.position();
+        int version = buffer.getInt(start + 4);
+        if (buffer.getInt(start) != MAGIC || version != VERSION && version != 1) {
+            throw new IllegalArgumentException("not a binary feature dictionary");
+        }
+        size = buffer.getInt(start + 8);
+        bucketCount = buffer.getInt(start + 12);
+        if (version == 1) {
+            slotCount = size;
+            seed = buffer.getLong(start + 16);
+            displacementOffset = start + VERSION_1_HEADER_BYTES;
+        } else {
+            slotCount = buffer.getInt(start + 16);
+            seed = buffer.getLong(start + 20);
+            displacementOffset = start + HEADER_BYTES;
+        }
+        fingerprintOffset = displacementOffset + bucketCount * Integer.BYTES;
+        valueOffset = fingerprintOffset + slotCount * Integer.BYTES;
+    }
+
+    /**
+     * 只读映射字典文件
+     */
+    public static BinaryFeatureDictionary open(String file) throws IOException {
+        try (FileChannel fileChannel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+            MappedByteBuffer mappedByteBuffer = fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, fileChannel.size());
+            return new BinaryFeatureDictionary(mappedByteBuffer);
+        }
+    }
+
+    /**
+     * 使用已经映射好的一段缓冲区(如快照文件中的一节)，从position开始解析
+     */
+    public static BinaryFeatureDictionary wrap(ByteBuffer buffer) {
+        return new BinaryFeatureDictionary(buffer);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 特征的下标，不在字典中时返回-1
+     */
+    public int get(CharSequence feature) {
+        if (size == 0) {
+            return -1;
+        }
+        long hash = hash(feature, seed);
+        int bucket = bucketOf(hash, bucketCount);
+        int displacement = buffer.getInt(displacementOffset + bucket * Integer.BYTES);
+        int slot = slotOf(hash, displacement, slotCount);
+        // 空槽的值为-1，指纹碰巧相同时也返回-1
+        if (buffer.getInt(fingerprintOffset + slot * Integer.BYTES) != fingerprintOf(hash)) {
+            return -1;
+        }
+        return buffer.getInt(valueOffset + slot * Integer.BYTES);
+    }
+
+    /**
+     * 把FeatureExtractor保存的feature_index.txt转换成二进制字典
+     */
+    public static void convert(String featureIndexFile, String binaryFile) throws IOException {
+        List<String> features = new ArrayList<>();
+        int[] values = new int[16];
+        try (BufferedReader bufferedReader = new BufferedReader(new FileReader(featureIndexFile))) {
+            String line;
+            while ((line = bufferedReader.readLine()) != null) {
+                int tab = line.lastIndexOf('\t');
+                if (tab < 0) {
+                    continue;
+                }
+                if (features.size() == values.length) {
+                    values = Arrays.copyOf(values, values.length * 2);
+                }
+                values[features.size()] = Integer.parseInt(line.substring(tab + 1));
+                features.add(line.substring(0, tab));
+            }
+        }
+        write(features, values, binaryFile);
+    }
+
+    public static void write(Map<String, Integer> featureIndexMap, String binaryFile) throws IOException {
+        List<String> features = new ArrayList<>(featureIndexMap.keySet());
+        int[] values = new int[features.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = featureIndexMap.get(features.get(i));
+        }
+        write(features, values, binaryFile);
+    }
+
+    public static void write(List<String> features, int[] values, String binaryFile) throws IOException {
+        try (DataOutputStream dataOutputStream = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(binaryFile), 1 << 16))) {
+            write(features, values, dataOutputStream);
+        }
+    }
+
+    /**
+     * 构建完美哈希并写出，桶按包含的key数从多到少依次寻找位移，使桶内key落在互不相同的空槽。
+     * 特征不能重复；连续MAX_SEEDS个种子都无法放置时抛出IllegalStateException
+     */
+    public static void write(List<String> features, int[] values, DataOutput dataOutput) throws IOException {
+        int size = features.size();
+        Set<String> seen = new HashSet<>(size * 2);
+        for (String feature : features) {
+            if (!seen.add(feature)) {
+                throw new IllegalArgumentException("duplicate feature: " + feature);
+            }
+        }
+        int bucketCount = Math.max(1, (size + KEYS_PER_BUCKET - 1) / KEYS_PER_BUCKET);
+        int slotCount = slotCount(size);
+        long seed = 0x2545f4914f6cdd1dL;
+        int[] displacements;
+        int[] slotKeys;
+        for (int attempt = 0; ; attempt++) {
+            if (attempt == MAX_SEEDS) {
+                throw new IllegalStateException("failed to build perfect hash for " + size + " features after "
+                        + MAX_SEEDS + " seeds");
+            }
+            long[] hashes = new long[size];
+            for (int i = 0; i < size; i++) {
+                hashes[i] = hash(features.get(i), seed);
+            }
+            displacements = new int[bucketCount];
+            slotKeys = new int[slotCount];
+            if (place(hashes, bucketCount, displacements, slotKeys)) {
+                break;
+            }
+            seed = seed * 0x5851f42d4c957f2dL + 0x14057b7ef767814fL;
+        }
+        dataOutput.writeInt(MAGIC);
+        dataOutput.writeInt(VERSION);
+        dataOutput.writeInt(size);
+        dataOutput.writeInt(bucketCount);
+        dataOutput.writeInt(slotCount);
+        dataOutput.writeLong(seed);
+        for (int displacement : displacements) {
+            dataOutput.writeInt(displacement);
+        }
+        for (int slot = 0; slot < slotCount; slot++) {
+            int key = slotKeys[slot];
+            dataOutput.writeInt(key < 0 ? 0 : fingerprintOf(hash(features.get(key), seed)));
+        }
+        for (int slot = 0; slot < slotCount; slot++) {
+            int key = slotKeys[slot];
+            dataOutput.writeInt(key < 0 ? -1 : values[key]);
+        }
+    }
+
+    /**
+     * 写出后的字节数
+     */
+    public static long sizeInBytes(int size) {
+        int bucketCount = Math.max(1, (size + KEYS_PER_BUCKET - 1) / KEYS_PER_BUCKET);
+        return HEADER_BYTES + (long) bucketCount * Integer.BYTES + (long) slotCount(size) * 2 * Integer.BYTES;
+    }
+
+    private static int slotCount(int size) {
+        return size == 0 ? 0 : (int) Math.min(Integer.MAX_VALUE - 8, (long) Math.ceil(size / LOAD_FACTOR));
+    }
+
+    /**
+     * 为每个桶找到位移，slotKeys[slot]为落在该槽的key，空槽为-1
+     */
+    private static boolean place(long[] hashes, int bucketCount, int[] displacements, int[] slotKeys) {
+        int size = hashes.length;
+        int slotCount = slotKeys.length;
+        Arrays.fill(slotKeys, -1);
+        // 按桶做计数排序
+        int[] bucketStart = new int[bucketCount + 1];
+        for (long hash : hashes) {
+            bucketStart[bucketOf(hash, bucketCount) + 1]++;
+        }
+        int maxBucketSize = 0;
+        for (int bucket = 0; bucket < bucketCount; bucket++) {
+            maxBucketSize = Math.max(maxBucketSize, bucketStart[bucket + 1]);
+            bucketStart[bucket + 1] += bucketStart[bucket];
+        }
+        int[] bucketKeys = new int[size];
+        int[] fill = Arrays.copyOf(bucketStart, bucketCount);
+        for (int key = 0; key < size; key++) {
+            bucketKeys[fill[bucketOf(hashes[key], bucketCount)]++] = key;
+        }
+        // 按桶大小从大到小排序
+        int[] sizeStart = new int[maxBucketSize + 2];
+        for (int bucket = 0; bucket < bucketCount; bucket++) {
+            sizeStart[maxBucketSize - (bucketStart[bucket + 1] - bucketStart[bucket]) + 1]++;
+        }
+        for (int i = 0; i <= maxBucketSize; i++) {
+            sizeStart[i + 1] += sizeStart[i];
+        }
+        int[] bucketOrder = new int[bucketCount];
+        for (int bucket = 0; bucket < bucketCount; bucket++) {
+            bucketOrder[sizeStart[maxBucketSize - (bucketStart[bucket + 1] - bucketStart[bucket])]++] = bucket;
+        }
+        boolean[] occupied = new boolean[slotCount];
+        int[] slots = new int[maxBucketSize];
+        for (int bucket : bucketOrder) {
+            int from = bucketStart[bucket];
+            int to = bucketStart[bucket + 1];
+            if (from == to) {
+                continue;
+            }
+            int displacement = 0;
+            search:
+            while (true) {
+                if (displacement >= MAX_DISPLACEMENT) {
+                    return false;
+                }
+                for (int i = from; i < to; i++) {
+                    int slot = slotOf(hashes[bucketKeys[i]], displacement, slotCount);
+                    if (occupied[slot]) {
+                        displacement++;
+                        continue search;
+                    }
+                    for (int j = 0; j < i - from; j++) {
+                        if (slots[j] == slot) {
+                            displacement++;
+                            continue search;
+                        }
+                    }
+                    slots[i - from] = slot;
+                }
+                break;
+            }
+            displacements[bucket] = displacement;
+            for (int i = from; i < to; i++) {
+                occupied[slots[i - from]] = true;
+                slotKeys[slots[i - from]] = bucketKeys[i];
+            }
+        }
+        return true;
+    }
+
+    static long hash(CharSequence feature, long seed) {
+        long hash = seed ^ feature.length();
+        for (int i = 0; i < feature.length(); i++) {
+            hash = (hash ^ feature.charAt(i)) * 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    private static int bucketOf(long hash, int bucketCount) {
+        return (int) ((hash >>> 32) % bucketCount);
+    }
+
+    private static int slotOf(long hash, int displacement, int slotCount) {
+        long slotHash = mix(hash ^ (displacement * 0x9e3779b97f4a7c15L));
+        return (int) ((slotHash >>> 1) % slotCount);
+    }
+
+    private static int fingerprintOf(long hash) {
+        return (int) mix(hash + 0x632be59bd9b4e019L);
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    public static void main(String[] args) throws IOException {
+        String featureSaveDir = "src/main/resources/data/feature_save/";
+        String featureIndexFile = args.length > 0 ? args[0] : featureSaveDir + "feature_index.txt";
+        String binaryFile = args.length > 1 ? args[1] : featureSaveDir + "feature_index.bin";
+        convert(featureIndexFile, binaryFile);
+    }
+}
@@ -0,0 +1,267 @@
+package com.huaze.shen.dict;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author Huaze Shen
+ * @date 2026-10-18
+ *
+ * 双数组Trie，边上的标号是字符id，词结束时由标号0的终止结点记录词id。
+ * 转移只需要两次数组访问：t = base[s] + code，且check[t] == s。
+ */
+public class DoubleArrayTrie {
+    public static final int ROOT = 0;
+
+    private static final int FREE = -1;
+    private static final int MAX_FAILS = 16;
+
+    private int[] base;
+    private int[] check;
+    private int size;
+
+    // 以下字段只在构建时使用
+    private int[][] keys;
+    private int[] values;
+    private boolean[] usedBase;
+    // 空闲位置的跳转表：nextFree[i] == i表示i可以作为候选，否则沿nextFree向后查找，查找时压缩路径
+    private int[] nextFree;
+    // 空闲位置作为候选失败的次数，达到MAX_FAILS后不再作为候选(仍可被其他结点的子结点占用)
+    private byte[] fails;
+
+    private DoubleArrayTrie() {
+    }
+
+    public DoubleArrayTrie(int[] base, int[] check) {
+        this.base = base;
+        this.check = check;
+        this.size = base.length;
+    }
+
+    /**
+     * 用词表构建，reversed为true时按逆序插入每个词，用于从右向左匹配
+     */
+    public static DoubleArrayTrie build(Vocabulary vocabulary, boolean reversed) {
+        List<int[]> keyList = new ArrayList<>(vocabulary.size());
+        for (int id = 0; id < vocabulary.size(); id++) {
+            String word = vocabulary.word(id);
+            int[] key = new int[word.length() + 1];
+            for (int i = 0; i < word.length(); i++) {
+                key[i] = reversed ? word.charAt(word.length() - 1 - i) : word.charAt(i);
+            }
+            // 末位存放词id，排序时不参与比较
+            key[word.length()] = id;
+            keyList.add(key);
+        }
+        return build(keyList);
+    }
+
+    /**
+     * 用字符id序列构建，第i个序列的值为i。序列不能重复
+     */
+    public static DoubleArrayTrie build(int[][] keys) {
+        List<int[]> keyList = new ArrayList<>(keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            int[] key = Arrays.copyOf(keys[i], keys[i].length + 1);
+            key[keys[i].length] = i;
+            keyList.add(key);
+        }
+        return build(keyList);
+    }
+
+    /**
+     * 每个key的末位是值，其余为字符id
+     */
+    private static DoubleArrayTrie build(List<int[]> keyList) {
+        keyList.sort(DoubleArrayTrie::compareKeys);
+        DoubleArrayTrie trie = new DoubleArrayTrie();
+        trie.keys = new int[keyList.size()][];
+        trie.values = new int[keyList.size()];
+        for (int i = 0; i < keyList.size(); i++) {
+            int[] key = keyList.get(i);
+            trie.keys[i] = Arrays.copyOf(key, key.length - 1);
+            trie.values[i] = key[key.length - 1];
+        }
+        trie.construct();
+        return trie;
+    }
+
+    /**
+     * 从state沿字符charId转移，失败返回-1
+     */
+    public int walk(int state, int charId) {
+        int next = base[state] + charId + 1;
+        if (next < size && check[next] == state) {
+            return next;
+        }
+        return -1;
+    }
+
+    /**
+     * state对应的词id，不是词尾时返回-1
+     */
+    public int value(int state) {
+        int terminal = base[state];
+        if (terminal < size && check[terminal] == state && base[terminal] < 0) {
+            return -base[terminal] - 1;
+        }
+        return -1;
+    }
+
+    public int[] getBase() {
+        return base;
+    }
+
+    public int[] getCheck() {
+        return check;
+    }
+
+    public long estimateBytes() {
+        return (long) size * 2 * Integer.BYTES;
+    }
+
+    private void construct() {
+        base = new int[Math.max(1024, keys.length * 4)];
+        check = new int[base.length];
+        usedBase = new boolean[base.length];
+        nextFree = new int[base.length];
+        fails = new byte[base.length];
+        Arrays.fill(check, FREE);
+        for (int i = 0; i < nextFree.length; i++) {
+            nextFree[i] = i;
+        }
+        base[ROOT] = 1;
+        occupy(ROOT, -2);
+        if (keys.length > 0) {
+            insert(ROOT, fetch(0, 0, keys.length), 0);
+        }
+        int last = base.length - 1;
+        while (last > 0 && check[last] == FREE) {
+            last--;
+        }
+        size = last + 1;
+        base = Arrays.copyOf(base, size);
+        check = Arrays.copyOf(check, size);
+        keys = null;
+        values = null;
+        usedBase = null;
+        nextFree = null;
+        fails = null;
+    }
+
+    /**
+     * 取出keys[left, right)在第depth位上的所有子结点，每个子结点用(code, left, right)表示
+     */
+    private List<int[]> fetch(int depth, int left, int right) {
+        List<int[]> siblings = new ArrayList<>();
+        int i = left;
+        while (i < right) {
+            int code = keys[i].length == depth ? 0 : keys[i][depth] + 1;
+            int j = i + 1;
+            if (code != 0) {
+                while (j < right && keys[j].length > depth && keys[j][depth] + 1 == code) {
+                    j++;
+                }
+            }
+            siblings.add(new int[]{code, i, j});
+            i = j;
+        }
+        return siblings;
+    }
+
+    /**
+     * 只在空闲位置上尝试，已占用的连续区间通过nextFree一次跳过；反复失败的空闲位置被移出候选，
+     * 总尝试次数不超过数组长度的常数倍，构建时间随词数近似线性增长
+     */
+    private void insert(int parent, List<int[]> siblings, int depth) {
+        int firstCode = siblings.get(0)[0];
+        int lastCode = siblings.get(siblings.size() - 1)[0];
+        int pos = firstCode;
+        int begin;
+        while (true) {
+            pos = findFree(pos + 1);
+            begin = pos - firstCode;
+            ensureCapacity(begin + lastCode + 1);
+            if (!usedBase[begin]) {
+                boolean fit = true;
+                for (int[] sibling : siblings) {
+                    if (check[begin + sibling[0]] != FREE) {
+                        fit = false;
+                        break;
+                    }
+                }
+                if (fit) {
+                    break;
+                }
+            }
+            if (++fails[pos] >= MAX_FAILS) {
+                nextFree[pos] = pos + 1;
+            }
+        }
+        usedBase[begin] = true;
+        base[parent] = begin;
+        for (int[] sibling : siblings) {
+            occupy(begin + sibling[0], parent);
+        }
+        for (int[] sibling : siblings) {
+            int state = begin + sibling[0];
+            if (sibling[0] == 0) {
+                base[state] = -values[sibling[1]] - 1;
+            } else {
+                insert(state, fetch(depth + 1, sibling[1], sibling[2]), depth + 1);
+            }
+        }
+    }
+
+    private void occupy(int state, int parent) {
+        check[state] = parent;
+        ensureCapacity(state + 2);
+        nextFree[state] = state + 1;
+    }
+
+    /**
+     * 不小于pos的第一个空闲位置
+     */
+    private int findFree(int pos) {
+        ensureCapacity(pos + 1);
+        int free = pos;
+        while (nextFree[free] != free) {
+            free = nextFree[free];
+            ensureCapacity(free + 1);
+        }
+        while (nextFree[pos] != pos) {
+            int next = nextFree[pos];
+            nextFree[pos] = free;
+            pos = next;
+        }
+        return free;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= base.length) {
+            return;
+        }
+        int newLength = Math.max(capacity, base.length + (base.length >> 1));
+        int oldLength = base.length;
+        base = Arrays.copyOf(base, newLength);
+        check = Arrays.copyOf(check, newLength);
+        usedBase = Arrays.copyOf(usedBase, newLength);
+        nextFree = Arrays.copyOf(nextFree, newLength);
+        fails = Arrays.copyOf(fails, newLength);
+        Arrays.fill(check, oldLength, newLength, FREE);
+        for (int i = oldLength; i < newLength; i++) {
+            nextFree[i] = i;
+        }
+    }
+
+    private static int compareKeys(int[] a, int[] b) {
+        int length = Math.min(a.length, b.length) - 1;
+        for (int i = 0; i < length; i++) {
+            if (a[i] != b[i]) {
+                return Integer.compare(a[i], b[i]);
+            }
+        }
+        return Integer.compare(a.length, b.length);
+    }
+}
@@ -0,0 +1,144 @@
+package com.huaze.shen.dict;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+
+/**
+ * @author Huaze Shen
+ * @date 2026-10-18
+ *
+ * 词典：词表、正向和逆向双数组Trie以及词二元组，供窗口词特征查询
+ */
+public class Lexicon {
+    private Vocabulary vocabulary;
+    private DoubleArrayTrie prefixTrie;
+    private DoubleArrayTrie suffixTrie;
+    private BigramIndex bigramIndex;
+
+    public Lexicon(Vocabulary vocabulary, BigramIndex bigramIndex) {
+        this.vocabulary = vocabulary;
+        this.bigramIndex = bigramIndex;
+        this.prefixTrie = DoubleArrayTrie.build(vocabulary, false);
+        this.suffixTrie = DoubleArrayTrie.build(vocabulary, true);
+    }
+
+    /**
+     * 使用已经构建好的双数组Trie(如从快照载入)，不重新构建
+     */
+    public Lexicon(Vocabulary vocabulary, BigramIndex bigramIndex, DoubleArrayTrie prefixTrie,
+                   DoubleArrayTrie suffixTrie) {
+        this.vocabulary = vocabulary;
+        this.bigramIndex = bigramIndex;
+        this.prefixTrie = prefixTrie;
+        this.suffixTrie = suffixTrie;
+    }
+
+    /**
+     * 从FeatureExtractor保存的unigram.txt和bigram.txt载入
+     */
+    public static Lexicon load(String unigramFile, String bigramFile) throws IOException {
+        Vocabulary vocabulary = new Vocabulary();
+        readUnigrams(unigramFile, vocabulary);
+        BigramIndex bigramIndex = new BigramIndex();
+        readBigrams(bigramFile, vocabulary, bigramIndex);
+        return new Lexicon(vocabulary, bigramIndex);
+    }
+
+    /**
+     * 把每行一个词的文件中的词依次加入词表
+     */
+    public static void readUnigrams(String unigramFile, Vocabulary vocabulary) throws IOException {
+        try (BufferedReader bufferedReader = new BufferedReader(new FileReader(unigramFile))) {
+            String line;
+            while ((line = bufferedReader.readLine()) != null) {
+                if (line.length() > 0) {
+                    vocabulary.add(line);
+                }
+            }
+        }
+    }
+
+    /**
+     * 读取每行"左词*右词"的文件，两个词都在词表中的二元组加入bigramIndex
+     */
+    public static void readBigrams(String bigramFile, Vocabulary vocabulary, BigramIndex bigramIndex)
+            throws IOException {
+        try (BufferedReader bufferedReader = new BufferedReader(new FileReader(bigramFile))) {
+            String line;
+            while ((line = bufferedReader.readLine()) != null) {
+                if (line.length() > 0) {
+                    int star = line.indexOf('*');
+                    int left = vocabulary.id(line.substring(0, star));
+                    int right = vocabulary.id(line.substring(star + 1));
+                    if (left >= 0 && right >= 0) {
+                        bigramIndex.add(left, right);
+                    }
+                }
+            }
+        }
+    }
+
+    public Vocabulary getVocabulary() {
+        return vocabulary;
+    }
+
+    public DoubleArrayTrie getPrefixTrie() {
+        return prefixTrie;
+    }
+
+    public DoubleArrayTrie getSuffixTrie() {
+        return suffixTrie;
+    }
+
+    public BigramIndex getBigramIndex() {
+        return bigramIndex;
+    }
+
+    public boolean containsBigram(int left, int right) {
+        return bigramIndex.contains(left, right);
+    }
+
+    /**
+     * 词表、两棵双数组trie和词二元组表估算占用的字节数
+     */
+    public long estimateBytes() {
+        return vocabulary.estimateBytes() + prefixTrie.estimateBytes() + suffixTrie.estimateBytes()
+                + bigramIndex.estimateBytes();
+    }
+
+    /**
+     * 对每个位置做一次逆向和一次正向匹配，找出以它结尾(prevWords)和以它开头(postWords)、
+     * 长度在wordMin到wordMax之间的词id，按长度从长到短存放在[index * span, (index + 1) * span)，没有词时为-1
+     */
+    public void matchWords(int[] charIds, int length, int wordMin, int wordMax, int[] prevWords, int[] postWords) {
+        int span = wordMax - wordMin + 1;
+        for (int index = 0; index < length; index++) {
+            int offset = index * span;
+            for (int k = 0; k < span; k++) {
+                prevWords[offset + k] = -1;
+                postWords[offset + k] = -1;
+            }
+            int state = DoubleArrayTrie.ROOT;
+            for (int range = 1; range <= wordMax && index - range + 1 >= 0; range++) {
+                state = suffixTrie.walk(state, charIds[index - range + 1]);
+                if (state < 0) {
+                    break;
+                }
+                if (range >= wordMin) {
+                    prevWords[offset + wordMax - range] = suffixTrie.value(state);
+                }
+            }
+            state = DoubleArrayTrie.ROOT;
+            for (int range = 1; range <= wordMax && index + range <= length; range++) {
+                state = prefixTrie.walk(state, charIds[index + range - 1]);
+                if (state < 0) {
+                    break;
+                }
+                if (range >= wordMin) {
+                    postWords[offset + wordMax - range] = prefixTrie.value(state);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.huaze.shen.dict;
+
+import com.huaze.shen.feature.CharNormalizer;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * @author Huaze Shen
+ * @date 2026-10-18
+ *
+ * 用户词典：在原始字符上构建的Aho-Corasick自动机，一遍扫描找出句子中所有词典词的出现，不限词长。
+ * 转移表就是双数组Trie(两个int数组)，另有失败转移和输出链各一个int数组，以及每个词的长度。
+ * 不使用归一化字符id：归一化把数字、字母和特殊字符各自合并成一类，"三星"会匹配到"五星级"中的"五星"。
+ * 句子归一化时会去掉空白，所以词中的空白在构建时被去掉，"iPhone 15"按"iPhone15"匹配。
+ * 构建后只读，可以在线程间共享。
+ */
+public class UserDictionary {
+    private DoubleArrayTrie trie;
+    private int[] fail;
+    // 沿失败转移遇到的下一个词尾状态，没有时为-1
+    private int[] output;
+    private int[] lengths;
+    private String[] words;
+
+    private UserDictionary(List<String> words) {
+        this.words = words.toArray(new String[0]);
+        int[][] keys = new int[this.words.length][];
+        lengths = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            String word = this.words[i];
+            keys[i] = new int[word.length()];
+            for (int j = 0; j < word.length(); j++) {
+                keys[i][j] = word.charAt(j);
+            }
+            lengths[i] = word.length();
+        }
+        trie = DoubleArrayTrie.build(keys);
+        buildFailLinks(keys);
+    }
+
+    /**
+     * 用词的集合构建，词中的空白被去掉，重复的词只保留第一个
+     */
+    public static UserDictionary build(Collection<String> words) {
+        CharNormalizer charNormalizer = CharNormalizer.getDefault();
+        List<String> uniqueWords = new ArrayList<>(words.size());
+        Set<String> seen = new HashSet<>(words.size() * 2);
+        for (String word : words) {
+            StringBuilder stripped = new StringBuilder(word.length());
+            for (int i = 0; i < word.length(); i++) {
+                char ch = word.charAt(i);
+                if (charNormalizer.charClass(ch) != CharNormalizer.WHITESPACE && !Character.isWhitespace(ch)) {
+                    stripped.append(ch);
+                }
+            }
+            if (stripped.length() > 0 && seen.add(stripped.toString())) {
+                uniqueWords.add(stripped.toString());
+            }
+        }
+        return new UserDictionary(uniqueWords);
+    }
+
+    /**
+     * 从UTF-8文本载入，每行一个词，行中制表符之后的内容(如词性、词频)被忽略，词中可以含空格
+     */
+    public static UserDictionary load(String file) throws IOException {
+        List<String> words = new ArrayList<>();
+        try (BufferedReader bufferedReader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = bufferedReader.readLine()) != null) {
+                int tab = line.indexOf('\t');
+                words.add(tab < 0 ? line : line.substring(0, tab));
+            }
+        }
+        return build(words);
+    }
+
+    public int size() {
+        return words.length;
+    }
+
+    public String word(int entry) {
+        return words[entry];
+    }
+
+    /**
+     * 一遍扫描原始字符chars[0, length)，对每个出现的词典词回调一次，顺序为结束位置递增
+     */
+    public void forEachMatch(int[] chars, int length, MatchHandler matchHandler) {
+        int state = DoubleArrayTrie.ROOT;
+        for (int i = 0; i < length; i++) {
+            int ch = chars[i];
+            int next = trie.walk(state, ch);
+            while (next < 0 && state != DoubleArrayTrie.ROOT) {
+                state = fail[state];
+                next = trie.walk(state, ch);
+            }
+            state = next < 0 ? DoubleArrayTrie.ROOT : next;
+            int entry = trie.value(state);
+            int match = entry >= 0 ? state : output[state];
+            while (match >= 0) {
+                entry = trie.value(match);
+                matchHandler.onMatch(i + 1 - lengths[entry], i + 1, entry);
+                match = output[match];
+            }
+        }
+    }
+
+    /**
+     * 对每个起点记录从该处开始的最长词典词的结束位置(没有时为0)，写入longestEnds并返回匹配次数
+     */
+    public int longestMatches(int[] chars, int length, int[] longestEnds) {
+        for (int i = 0; i < length; i++) {
+            longestEnds[i] = 0;
+        }
+        int[] count = {0};
+        forEachMatch(chars, length, (start, end, entry) -> {
+            count[0]++;
+            if (end > longestEnds[start]) {
+                longestEnds[start] = end;
+            }
+        });
+        return count[0];
+    }
+
+    public long estimateBytes() {
+        return trie.estimateBytes() + (long) (fail.length + output.length + lengths.length) * Integer.BYTES;
+    }
+
+    public interface MatchHandler {
+        /**
+         * 词典词entry出现在[start, end)
+         */
+        void onMatch(int start, int end, int entry);
+    }
+
+    /**
+     * 按深度逐层计算失败转移：第d层状态的失败转移由其父状态(第d - 1层)的失败转移求出
+     */
+    private void buildFailLinks(int[][] keys) {
+        int size = trie.getBase().length;
+        fail = new int[size];
+        output = new int[size];
+        boolean[] visited = new boolean[size];
+        visited[DoubleArrayTrie.ROOT] = true;
+        output[DoubleArrayTrie.ROOT] = -1;
+        int[] states = new int[keys.length];
+        int maxLength = 0;
+        for (int[] key : keys) {
+            maxLength = Math.max(maxLength, key.length);
+        }
+        for (int depth = 0; depth < maxLength; depth++) {
+            for (int k = 0; k < keys.length; k++) {
+                int[] key = keys[k];
+                if (key.length <= depth) {
+                    continue;
+                }
+                int parent = states[k];
+                int ch = key[depth];
+                int state = trie.walk(parent, ch);
+                states[k] = state;
+                if (visited[state]) {
+                    continue;
+                }
+                visited[state] = true;
+                int link = DoubleArrayTrie.ROOT;
+                if (parent != DoubleArrayTrie.ROOT) {
+                    int candidate = fail[parent];
+                    int next = trie.walk(candidate, ch);
+                    while (next < 0 && candidate != DoubleArrayTrie.ROOT) {
+                        candidate = fail[candidate];
+                        next = trie.walk(candidate, ch);
+                    }
+                    link = next < 0 ? DoubleArrayTrie.ROOT : next;
+                }
+                fail[state] = link;
+                output[state] = trie.value(link) >= 0 ? link : output[link];
+            }
+        }
+    }
+}
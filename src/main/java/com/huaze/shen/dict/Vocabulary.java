@@ -0,0 +1,146 @@
+package com.huaze.shen.dict;
+
+import java.util.*;
+
+/**
+ * @author Huaze Shen
+ * @date 2026-10-18
+ *
+ * 词表：词与整数id的双向映射，支持直接用字符id片段查询而不构造字符串
+ */
+public class Vocabulary implements Iterable<String> {
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private List<String> words;
+    private int[] hashes;
+    private int[] slots;
+    private int mask;
+
+    public Vocabulary() {
+        words = new ArrayList<>();
+        hashes = new int[16];
+        slots = new int[16];
+        mask = slots.length - 1;
+    }
+
+    public Vocabulary(Collection<String> words) {
+        this();
+        for (String word : words) {
+            add(word);
+        }
+    }
+
+    /**
+     * 加入一个词，返回它的id；已存在时返回原id
+     */
+    public int add(String word) {
+        int hash = word.hashCode();
+        int slot = findSlot(word, hash);
+        if (slots[slot] != 0) {
+            return slots[slot] - 1;
+        }
+        int id = words.size();
+        words.add(word);
+        if (id == hashes.length) {
+            hashes = Arrays.copyOf(hashes, hashes.length << 1);
+        }
+        hashes[id] = hash;
+        slots[slot] = id + 1;
+        if (words.size() > slots.length * LOAD_FACTOR) {
+            rehash();
+        }
+        return id;
+    }
+
+    public int id(String word) {
+        return slots[findSlot(word, word.hashCode())] - 1;
+    }
+
+    public boolean contains(String word) {
+        return id(word) >= 0;
+    }
+
+    public String word(int id) {
+        return words.get(id);
+    }
+
+    public int size() {
+        return words.size();
+    }
+
+    /**
+     * 查询charIds[start, start + length)组成的词的id，不存在返回-1
+     */
+    public int id(int[] charIds, int start, int length) {
+        int hash = 0;
+        for (int i = start; i < start + length; i++) {
+            hash = 31 * hash + charIds[i];
+        }
+        int slot = spread(hash) & mask;
+        while (slots[slot] != 0) {
+            int id = slots[slot] - 1;
+            if (hashes[id] == hash && matches(words.get(id), charIds, start, length)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * 估算占用的堆内存字节数：哈希数组、词列表和词字符串(按压缩指针的对象布局估算)
+     */
+    public long estimateBytes() {
+        long bytes = (long) (hashes.length + slots.length) * Integer.BYTES + (long) words.size() * 4;
+        for (String word : words) {
+            bytes += 24 + ((16 + word.length() * 2 + 7) & ~7);
+        }
+        return bytes;
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return Collections.unmodifiableList(words).iterator();
+    }
+
+    private static boolean matches(String word, int[] charIds, int start, int length) {
+        if (word.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (word.charAt(i) != charIds[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int findSlot(String word, int hash) {
+        int slot = spread(hash) & mask;
+        while (slots[slot] != 0) {
+            int id = slots[slot] - 1;
+            if (hashes[id] == hash && words.get(id).equals(word)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length << 1];
+        mask = slots.length - 1;
+        for (int id = 0; id < words.size(); id++) {
+            int slot = spread(hashes[id]) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = id + 1;
+        }
+    }
+
+    private static int spread(int hash) {
+        hash *= 0x9e3779b9;
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,264 @@
+package com.huaze.shen.feature;
+
+import java.io.*;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author Huaze Shen
+ * @date 2026-10-18
+ *
+ * 字符归一化：用覆盖整个BMP的byte[]类别表和int[]字符id表代替逐字符构造的集合，
+ * 类别规则从表文件(默认为类路径下的data/char_class.txt)载入。
+ * 切词和归一化在一次遍历中完成，结果与原先的trim、特殊字符替换、按"[ \t]+"切分、数字字母归一化一致。
+ * 载入后只读，可以在线程间共享。
+ */
+public class CharNormalizer {
+    public static final byte OTHER = 0;
+    public static final byte SPECIAL = 1;
+    public static final byte NUMBER = 2;
+    public static final byte LETTER = 3;
+    public static final byte WHITESPACE = 4;
+
+    public static final char SPECIAL_REPLACEMENT = '&';
+    public static final String NUM_TOKEN = "**Num";
+    public static final String LETTER_TOKEN = "**Letter";
+    public static final String DEFAULT_TABLE = "data/char_class.txt";
+
+    private static final String[] CLASS_NAMES = {"other", "special", "number", "letter", "whitespace"};
+    private static volatile CharNormalizer defaultNormalizer;
+
+    private byte[] classes = new byte[Character.MAX_VALUE + 1];
+    private int[] charIds = new int[Character.MAX_VALUE + 1];
+
+    private CharNormalizer(BufferedReader bufferedReader) throws IOException {
+        boolean[] assigned = new boolean[classes.length];
+        String line;
+        while ((line = bufferedReader.readLine()) != null) {
+            if (line.length() == 0 || line.charAt(0) == '#') {
+                continue;
+            }
+            int tab = line.indexOf('\t');
+            if (tab < 0) {
+                throw new IOException("bad char class line: " + line);
+            }
+            byte charClass = classOf(line.substring(0, tab).trim());
+            String chars = unescape(line.substring(tab + 1));
+            for (int i = 0; i < chars.length(); i++) {
+                char ch = chars.charAt(i);
+                if (!assigned[ch]) {
+                    assigned[ch] = true;
+                    classes[ch] = charClass;
+                }
+            }
+        }
+        for (int ch = 0; ch < charIds.length; ch++) {
+            switch (classes[ch]) {
+                case SPECIAL:
+                    charIds[ch] = SPECIAL_REPLACEMENT;
+                    break;
+                case NUMBER:
+                    charIds[ch] = FeatureKey.NUM_ID;
+                    break;
+                case LETTER:
+                    charIds[ch] = FeatureKey.LETTER_ID;
+                    break;
+                default:
+                    charIds[ch] = ch;
+            }
+        }
+    }
+
+    /**
+     * 类路径下默认类别表对应的实例
+     */
+    public static CharNormalizer getDefault() {
+        CharNormalizer normalizer = defaultNormalizer;
+        if (normalizer == null) {
+            synchronized (CharNormalizer.class) {
+                normalizer = defaultNormalizer;
+                if (normalizer == null) {
+                    InputStream inputStream = CharNormalizer.class.getClassLoader().getResourceAsStream(DEFAULT_TABLE);
+                    if (inputStream == null) {
+                        throw new IllegalStateException("char class table not found on classpath: " + DEFAULT_TABLE);
+                    }
+                    try {
+                        normalizer = load(inputStream);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    defaultNormalizer = normalizer;
+                }
+            }
+        }
+        return normalizer;
+    }
+
+    public static CharNormalizer load(String tableFile) throws IOException {
+        return load(new FileInputStream(tableFile));
+    }
+
+    public static CharNormalizer load(InputStream inputStream) throws IOException {
+        try (BufferedReader bufferedReader =
+                     new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
+            return new CharNormalizer(bufferedReader);
+        }
+    }
+
+    public byte charClass(char ch) {
+        return classes[ch];
+    }
+
+    /**
+     * 归一化后的字符id：特殊字符为'&'，数字为NUM_ID，字母为LETTER_ID，其余为字符本身
+     */
+    public int charId(char ch) {
+        return charIds[ch];
+    }
+
+    /**
+     * FeatureExtractor字符串特征中使用的归一化字符
+     */
+    public String normalizedChar(char ch) {
+        switch (classes[ch]) {
+            case NUMBER:
+                return NUM_TOKEN;
+            case LETTER:
+                return LETTER_TOKEN;
+            case SPECIAL:
+                return String.valueOf(SPECIAL_REPLACEMENT);
+            default:
+                return String.valueOf(ch);
+        }
+    }
+
+    /**
+     * 去掉首尾空白，替换特殊字符后按分隔符切分成词，空行返回null
+     */
+    public String[] splitWords(CharSequence line) {
+        int start = trimStart(line);
+        int end = trimEnd(line, start);
+        if (start == end) {
+            return null;
+        }
+        List<String> words = new ArrayList<>();
+        char[] word = new char[end - start];
+        int wordLength = 0;
+        for (int i = start; i < end; i++) {
+            char ch = line.charAt(i);
+            byte charClass = classes[ch];
+            if (charClass == WHITESPACE) {
+                if (wordLength > 0) {
+                    words.add(new String(word, 0, wordLength));
+                    wordLength = 0;
+                }
+                continue;
+            }
+            word[wordLength++] = charClass == SPECIAL ? SPECIAL_REPLACEMENT : ch;
+        }
+        if (wordLength > 0) {
+            words.add(new String(word, 0, wordLength));
+        }
+        return words.toArray(new String[0]);
+    }
+
+    /**
+     * 一次遍历完成切分和归一化：写入每个字的归一化id、原始字符和是否词首，返回字数。
+     * 三个输出数组的长度不能小于length。
+     */
+    public int normalize(char[] chars, int offset, int length, int[] ids, char[] sourceChars, boolean[] wordStarts) {
+        int start = offset;
+        int end = offset + length;
+        while (start < end && chars[start] <= ' ') {
+            start++;
+        }
+        while (end > start && chars[end - 1] <= ' ') {
+            end--;
+        }
+        int count = 0;
+        boolean wordStart = true;
+        for (int i = start; i < end; i++) {
+            char ch = chars[i];
+            if (classes[ch] == WHITESPACE) {
+                wordStart = true;
+                continue;
+            }
+            wordStarts[count] = wordStart;
+            sourceChars[count] = ch;
+            ids[count++] = charIds[ch];
+            wordStart = false;
+        }
+        return count;
+    }
+
+    /**
+     * 同normalize(char[], ...)，直接读取String或CharBuffer，有底层数组的CharBuffer不经过charAt
+     */
+    public int normalize(CharSequence text, int[] ids, char[] sourceChars, boolean[] wordStarts) {
+        if (text instanceof CharBuffer && ((CharBuffer) text).hasArray()) {
+            CharBuffer charBuffer = (CharBuffer) text;
+            return normalize(charBuffer.array(), charBuffer.arrayOffset() + charBuffer.position(),
+                    charBuffer.remaining(), ids, sourceChars, wordStarts);
+        }
+        int start = trimStart(text);
+        int end = trimEnd(text, start);
+        int count = 0;
+        boolean wordStart = true;
+        for (int i = start; i < end; i++) {
+            char ch = text.charAt(i);
+            if (classes[ch] == WHITESPACE) {
+                wordStart = true;
+                continue;
+            }
+            wordStarts[count] = wordStart;
+            sourceChars[count] = ch;
+            ids[count++] = charIds[ch];
+            wordStart = false;
+        }
+        return count;
+    }
+
+    /**
+     * 与String.trim相同，首尾不大于空格的字符都被去掉
+     */
+    private static int trimStart(CharSequence text) {
+        int start = 0;
+        while (start < text.length() && text.charAt(start) <= ' ') {
+            start++;
+        }
+        return start;
+    }
+
+    private static int trimEnd(CharSequence text, int start) {
+        int end = text.length();
+        while (end > start && text.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return end;
+    }
+
+    private static byte classOf(String name) throws IOException {
+        for (byte i = 0; i < CLASS_NAMES.length; i++) {
+            if (CLASS_NAMES[i].equals(name)) {
+                return i;
+            }
+        }
+        throw new IOException("unknown char class: " + name);
+    }
+
+    private static String unescape(String chars) {
+        StringBuilder stringBuilder = new StringBuilder(chars.length());
+        for (int i = 0; i < chars.length(); i++) {
+            char ch = chars.charAt(i);
+            if (ch == '\\' && i + 5 < chars.length() && chars.charAt(i + 1) == 'u') {
+                stringBuilder.append((char) Integer.parseInt(chars.substring(i + 2, i + 6), 16));
+                i += 5;
+            } else {
+                stringBuilder.append(ch);
+            }
+        }
+        return stringBuilder.toString();
+    }
+}
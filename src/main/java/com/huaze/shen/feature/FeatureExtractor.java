@@ -1,9 +1,22 @@
 package com.huaze.shen.feature;
 
-import com.huaze.shen.util.SortMapUtil;
+import com.huaze.shen.corpus.BinaryCorpusWriter;
+import com.huaze.shen.dict.BigramIndex;
+import com.huaze.shen.dict.BinaryFeatureDictionary;
+import com.huaze.shen.dict.DoubleArrayTrie;
+import com.huaze.shen.dict.Lexicon;
+import com.huaze.shen.dict.Vocabulary;
+import com.huaze.shen.metrics.Counter;
+import com.huaze.shen.metrics.Metrics;
+import com.huaze.shen.metrics.MetricsRegistry;
+import com.huaze.shen.metrics.StageTimer;
+import com.huaze.shen.util.LongIntHashMap;
+import com.huaze.shen.util.ExternalFeatureSorter;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.LongSupplier;
 
 /**
  * @author Huaze Shen
@@ -12,78 +25,233 @@ import java.util.*;
  * 提取特征
  */
 public class FeatureExtractor {
+    public static final String STAGE_READ = "feature.read";
+    public static final String STAGE_NORMALIZE = "feature.normalize";
+    public static final String STAGE_LEXICON = "feature.lexicon";
+    public static final String STAGE_COUNT = "feature.count";
+    public static final String STAGE_SORT = "feature.sort";
+    public static final String STAGE_INDEX = "feature.index";
+    public static final String STAGE_WRITE = "feature.write";
+    public static final String STAGE_CONVERT_TEXT = "feature.convert.text";
+    public static final String STAGE_CONVERT_INDEX = "feature.convert.index";
+    public static final String SENTENCES = "feature.sentences";
+    public static final String CHARS = "feature.chars";
+    public static final String ERRORS = "feature.errors";
+
     private String trainFile;
-    private Set<String> unigramSet;
-    private Set<String> bigramSet;
+    private Vocabulary vocabulary;
+    private BigramIndex bigramIndex;
+    private Lexicon lexicon;
     private List<List<String>> charLists;
     private Map<String, Integer> featureIndexMap;
     private Map<String, Integer> tagIndexMap;
     private String featureSaveDir;
     private int wordMax = 6;
     private int wordMin = 2;
+    private ForkJoinPool forkJoinPool;
+    private int minFeatureCount;
+    /** 特征排序使用的内存上限，超过时溢写到临时目录后归并 */
+    private static final long SORT_MEMORY_BYTES = 256L << 20;
+    private MetricsRegistry metricsRegistry = Metrics.get();
+    private StageTimer readTimer = metricsRegistry.timer(STAGE_READ);
+    private StageTimer normalizeTimer = metricsRegistry.timer(STAGE_NORMALIZE);
+    private StageTimer lexiconTimer = metricsRegistry.timer(STAGE_LEXICON);
+    private StageTimer countTimer = metricsRegistry.timer(STAGE_COUNT);
+    private StageTimer sortTimer = metricsRegistry.timer(STAGE_SORT);
+    private StageTimer indexTimer = metricsRegistry.timer(STAGE_INDEX);
+    private StageTimer writeTimer = metricsRegistry.timer(STAGE_WRITE);
+    private Counter sentenceCounter = metricsRegistry.counter(SENTENCES);
+    private Counter charCounter = metricsRegistry.counter(CHARS);
+    private Counter errorCounter = metricsRegistry.counter(ERRORS);
+    private Map<String, LongSupplier> gauges = new LinkedHashMap<>();
 
     public FeatureExtractor(String trainFile) {
+        this(trainFile, null);
+    }
+
+    /**
+     * forkJoinPool不为null时在其上并行构建词表和统计特征，得到的特征下标与串行构建相同
+     */
+    public FeatureExtractor(String trainFile, ForkJoinPool forkJoinPool) {
+        this(trainFile, forkJoinPool, 1);
+    }
+
+    /**
+     * 出现次数小于minFeatureCount的特征不分配下标
+     */
+    public FeatureExtractor(String trainFile, ForkJoinPool forkJoinPool, int minFeatureCount) {
+        this(trainFile, "src/main/resources/data/feature_save/", forkJoinPool, minFeatureCount);
+    }
+
+    /**
+     * 词表和特征表保存到featureSaveDir(以"/"结尾)
+     */
+    public FeatureExtractor(String trainFile, String featureSaveDir, ForkJoinPool forkJoinPool, int minFeatureCount) {
         this.trainFile = trainFile;
+        this.featureSaveDir = featureSaveDir;
+        this.forkJoinPool = forkJoinPool;
+        this.minFeatureCount = minFeatureCount;
         init();
     }
 
     private void init() {
-        unigramSet = new HashSet<>();
-        bigramSet = new HashSet<>();
+        vocabulary = new Vocabulary();
+        bigramIndex = new BigramIndex();
         charLists = new ArrayList<>();
         featureIndexMap = new LinkedHashMap<>();
         tagIndexMap = new LinkedHashMap<>();
-        featureSaveDir = "src/main/resources/data/feature_save/";
         buildFeature();
         saveFeature();
+        registerGauges();
+    }
+
+    /**
+     * 词表、词二元组表和词典的大小及估算的内存占用，在取指标快照时计算。
+     * 仪表注册在全局注册表中，只引用这几个结构而不引用this，语料和字符串特征表可以被回收；
+     * 特征表构建后不再变化，大小和内存占用在这里算一次。
+     */
+    private void registerGauges() {
+        Vocabulary vocabulary = this.vocabulary;
+        BigramIndex bigramIndex = this.bigramIndex;
+        Lexicon lexicon = this.lexicon;
+        long featureIndexSize = featureIndexMap.size();
+        long featureIndexBytes = estimateBytes(featureIndexMap);
+        registerGauge("feature.vocabulary.size", vocabulary::size);
+        registerGauge("feature.vocabulary.bytes", vocabulary::estimateBytes);
+        registerGauge("feature.bigram.size", bigramIndex::size);
+        registerGauge("feature.bigram.bytes", bigramIndex::estimateBytes);
+        registerGauge("feature.lexicon.bytes", lexicon::estimateBytes);
+        registerGauge("feature.index.size", () -> featureIndexSize);
+        registerGauge("feature.index.bytes", () -> featureIndexBytes);
+    }
+
+    private void registerGauge(String name, LongSupplier supplier) {
+        gauges.put(name, supplier);
+        metricsRegistry.gauge(name, supplier);
+    }
+
+    /**
+     * 从注册表移除这个实例注册的仪表，之后注册的同名仪表不受影响
+     */
+    public void unregisterGauges() {
+        for (Map.Entry<String, LongSupplier> entry : gauges.entrySet()) {
+            metricsRegistry.removeGauge(entry.getKey(), entry.getValue());
+        }
+        gauges.clear();
+    }
+
+    /**
+     * 按LinkedHashMap的表和节点、String和Integer对象估算Map<String, Integer>占用的字节数
+     */
+    private static long estimateBytes(Map<String, Integer> map) {
+        long bytes = 4L * Integer.highestOneBit(Math.max(1, map.size() * 4 / 3) * 2);
+        for (String key : map.keySet()) {
+            bytes += 40 + 16 + 24 + ((16 + key.length() * 2 + 7) & ~7);
+        }
+        return bytes;
     }
 
     private void buildFeature() {
+        if (forkJoinPool != null) {
+            buildFeatureInParallel();
+            return;
+        }
         try {
             BufferedReader bufferedReader = new BufferedReader(new FileReader(trainFile));
             String line;
+            long readStart = readTimer.start();
             while ((line = bufferedReader.readLine()) != null) {
-                line = line.trim();
-                if (line.length() == 0) {
-                    continue;
-                }
-                String specialCharNormalizedLine = specialCharNormalize(line);
-                String[] lineSplit = specialCharNormalizedLine.split("[ \t]+");
-                unigramSet.addAll(Arrays.asList(lineSplit));
-                for (int i = 0; i < lineSplit.length - 1; i++) {
-                    bigramSet.add(String.format("%s*%s", lineSplit[i], lineSplit[i + 1]));
-                }
-                List<String> charList = new ArrayList<>();
-                for (String word : lineSplit) {
-                    for (int i = 0; i < word.length(); i++) {
-                        char ch = word.charAt(i);
-                        String numberLetterNormalizedChar = numberLetterNormalize(ch);
-                        charList.add(numberLetterNormalizedChar);
+                readTimer.stop(readStart, 1);
+                long normalizeStart = normalizeTimer.start();
+                String[] lineSplit = splitLine(line);
+                if (lineSplit != null) {
+                    int prevWordId = -1;
+                    for (String word : lineSplit) {
+                        int wordId = vocabulary.add(word);
+                        if (prevWordId >= 0) {
+                            bigramIndex.add(prevWordId, wordId);
+                        }
+                        prevWordId = wordId;
                     }
+                    List<String> charList = createCharList(lineSplit);
+                    charLists.add(charList);
+                    sentenceCounter.increment();
+                    charCounter.add(charList.size());
+                    normalizeTimer.stop(normalizeStart, charList.size());
                 }
-                charLists.add(charList);
+                readStart = readTimer.start();
             }
         } catch (Exception e) {
+            errorCounter.increment();
             e.printStackTrace();
         }
-        // TODO: 去除出现频次小于阈值的特征
         createFeatures();
     }
 
+    private void buildFeatureInParallel() {
+        try {
+            List<String> lines = new ArrayList<>();
+            long readStart = readTimer.start();
+            BufferedReader bufferedReader = new BufferedReader(new FileReader(trainFile));
+            String line;
+            while ((line = bufferedReader.readLine()) != null) {
+                lines.add(line);
+            }
+            bufferedReader.close();
+            readTimer.stop(readStart, lines.size());
+            long normalizeStart = normalizeTimer.start();
+            ParallelFeatureBuilder parallelFeatureBuilder =
+                    new ParallelFeatureBuilder(forkJoinPool, ParallelFeatureBuilder.DEFAULT_SHARD_SIZE);
+            ParallelFeatureBuilder.VocabularyShard shard = parallelFeatureBuilder.buildVocabulary(lines);
+            vocabulary = shard.vocabulary;
+            bigramIndex = shard.bigramIndex;
+            charLists = shard.charLists;
+            long charCount = countChars();
+            sentenceCounter.add(charLists.size());
+            charCounter.add(charCount);
+            normalizeTimer.stop(normalizeStart, charCount);
+        } catch (Exception e) {
+            errorCounter.increment();
+            e.printStackTrace();
+        }
+        createFeatures();
+    }
+
+    /**
+     * 去掉首尾空白、做特殊字符归一化并按空格切分，空行返回null
+     */
+    static String[] splitLine(String line) {
+        return CharNormalizer.getDefault().splitWords(line);
+    }
+
+    static List<String> createCharList(String[] lineSplit) {
+        CharNormalizer charNormalizer = CharNormalizer.getDefault();
+        List<String> charList = new ArrayList<>();
+        for (String word : lineSplit) {
+            for (int i = 0; i < word.length(); i++) {
+                char ch = word.charAt(i);
+                charList.add(charNormalizer.normalizedChar(ch));
+            }
+        }
+        return charList;
+    }
+
 
-    private void convertTextFileToFeatureFile(String textFile, String charTagFile, String featureFile) {
+    public void convertTextFileToFeatureFile(String textFile, String charTagFile, String featureFile) {
+        StageTimer convertTimer = metricsRegistry.timer(STAGE_CONVERT_TEXT);
+        long convertStart = convertTimer.start();
+        long charCount = 0;
         try {
             BufferedReader textFileReader = new BufferedReader(new FileReader(textFile));
             BufferedWriter charTagFileWriter = new BufferedWriter(new FileWriter(charTagFile));
             BufferedWriter featureFileWriter = new BufferedWriter(new FileWriter(featureFile));
+            CharNormalizer charNormalizer = CharNormalizer.getDefault();
             String line;
             while ((line = textFileReader.readLine()) != null) {
-                line = line.trim();
-                if (line.length() == 0) {
+                String[] lineSplit = splitLine(line);
+                if (lineSplit == null) {
                     continue;
                 }
-                String specialCharNormalizedLine = specialCharNormalize(line);
-                String[] lineSplit = specialCharNormalizedLine.split("[ \t]+");
                 List<String> charList = new ArrayList<>();
                 List<String> tagList = new ArrayList<>();
                 for (String word : lineSplit) {
@@ -102,12 +270,12 @@ public class FeatureExtractor {
                             tag = "I";
                         }
                         charTagFileWriter.write(ch + " " + tag + "\n");
-                        String numberLetterNormalizedChar = numberLetterNormalize(ch);
-                        charList.add(numberLetterNormalizedChar);
+                        charList.add(charNormalizer.normalizedChar(ch));
                         tagList.add(tag);
                     }
                 }
                 charTagFileWriter.write("\n");
+                charCount += tagList.size();
                 for (int i = 0; i < tagList.size(); i++) {
                     String tag = tagList.get(i);
                     List<String> features = getNodeFeatures(i, charList);
@@ -120,11 +288,28 @@ public class FeatureExtractor {
             charTagFileWriter.close();
             featureFileWriter.close();
         } catch (Exception e) {
+            errorCounter.increment();
+            e.printStackTrace();
+        }
+        convertTimer.stop(convertStart, charCount);
+    }
+
+    /**
+     * 一遍把原始文本直接转换成二进制特征语料，见BinaryCorpusWriter
+     */
+    public void convertTextFileToBinaryFile(String textFile, String binaryFile) {
+        try {
+            BinaryCorpusWriter.convert(createIntFeatureExtractor(), textFile, binaryFile);
+        } catch (Exception e) {
+            errorCounter.increment();
             e.printStackTrace();
         }
     }
 
-    private void convertFeatureFileToIndexFile(String featureFile, String featureIndexFile, String tagIndexFile) {
+    public void convertFeatureFileToIndexFile(String featureFile, String featureIndexFile, String tagIndexFile) {
+        StageTimer convertTimer = metricsRegistry.timer(STAGE_CONVERT_INDEX);
+        long convertStart = convertTimer.start();
+        long nodeCount = 0;
         try {
             BufferedReader featureFileReader = new BufferedReader(new FileReader(featureFile));
             BufferedWriter featureIndexFileWriter = new BufferedWriter(new FileWriter(featureIndexFile));
@@ -157,41 +342,117 @@ public class FeatureExtractor {
                 featureIndexLists.add(featureIndexList);
                 String tag = lineSplit[lineSplit.length - 1];
                 tagIndexList.add(String.valueOf(tagIndexMap.get(tag)));
+                nodeCount++;
             }
             featureFileReader.close();
             featureIndexFileWriter.close();
             tagIndexFileWriter.close();
         } catch (Exception e) {
+            errorCounter.increment();
             e.printStackTrace();
         }
+        convertTimer.stop(convertStart, nodeCount);
     }
 
     private void saveFeature() {
+        long writeStart = writeTimer.start();
+        discardDeltas();
         saveUnigram();
         saveBigram();
         saveFeatureIndexMap();
         saveTagIndexMap();
+        writeTimer.stop(writeStart, vocabulary.size() + bigramIndex.size() + featureIndexMap.size() + tagIndexMap.size());
+    }
+
+    private long countChars() {
+        long charCount = 0;
+        for (List<String> charList : charLists) {
+            charCount += charList.size();
+        }
+        return charCount;
+    }
+
+    /**
+     * 基于已载入的语料重新统计特征并分配下标
+     */
+    public void createFeatures() {
+        // 用整数特征key计数，只在最后对去重后的特征构造字符串
+        featureIndexMap.clear();
+        tagIndexMap.clear();
+        long lexiconStart = lexiconTimer.start();
+        lexicon = new Lexicon(vocabulary, bigramIndex);
+        lexiconTimer.stop(lexiconStart, vocabulary.size());
+        long countStart = countTimer.start();
+        LongIntHashMap featureKeyCountMap;
+        if (forkJoinPool != null) {
+            ParallelFeatureBuilder parallelFeatureBuilder =
+                    new ParallelFeatureBuilder(forkJoinPool, ParallelFeatureBuilder.DEFAULT_SHARD_SIZE);
+            featureKeyCountMap = parallelFeatureBuilder.countFeatures(charLists, lexicon, wordMin, wordMax);
+        } else {
+            featureKeyCountMap = countFeatureKeys();
+        }
+        countTimer.stop(countStart, countChars());
+        try (ExternalFeatureSorter externalFeatureSorter = new ExternalFeatureSorter(SORT_MEMORY_BYTES, null)) {
+            long sortStart = sortTimer.start();
+            featureKeyCountMap.forEach((key, count) ->
+                    externalFeatureSorter.add(FeatureKey.format(key, vocabulary), count));
+            externalFeatureSorter.finish();
+            sortTimer.stop(sortStart, featureKeyCountMap.size());
+            long indexStart = indexTimer.start();
+            externalFeatureSorter.forEachSorted((chars, offset, length, count) ->
+                    featureToIndex(new String(chars, offset, length), count));
+            tagToIndex();
+            indexTimer.stop(indexStart, featureIndexMap.size());
+        } catch (IOException e) {
+            errorCounter.increment();
+            e.printStackTrace();
+        }
     }
 
-    private void createFeatures() {
-        Map<String, Integer> featureCountMap = new HashMap<>();
+    private LongIntHashMap countFeatureKeys() {
+        IntFeatureExtractor intFeatureExtractor = new IntFeatureExtractor(lexicon, null, wordMin, wordMax);
+        LongIntHashMap featureKeyCountMap = new LongIntHashMap();
+        long[] featureKeys = new long[intFeatureExtractor.maxNodeFeatures()];
         for (List<String> charList : charLists) {
+            intFeatureExtractor.setNormalizedSentence(charList);
             for (int i = 0; i < charList.size(); i++) {
-                 List<String> nodeFeatures = getNodeFeatures(i, charList);
-                 for (String feature : nodeFeatures) {
-                     if (!featureCountMap.containsKey(feature)) {
-                         featureCountMap.put(feature, 0);
-                     }
-                     featureCountMap.put(feature, featureCountMap.get(feature) + 1);
-                 }
+                int featureCount = intFeatureExtractor.getNodeFeatureKeys(i, featureKeys);
+                for (int j = 0; j < featureCount; j++) {
+                    featureKeyCountMap.addTo(featureKeys[j], 1);
+                }
             }
         }
-        Map<String, Integer> sortedFeatureCountMap = SortMapUtil.sortByKey(featureCountMap, true);
-        featureToIndex(sortedFeatureCountMap);
-        tagToIndex();
+        return featureKeyCountMap;
+    }
+
+    /**
+     * 基于当前词表和特征表创建整数特征抽取器
+     */
+    public IntFeatureExtractor createIntFeatureExtractor() {
+        LongIntHashMap featureKeyIndexMap =
+                IntFeatureExtractor.createFeatureKeyIndexMap(featureIndexMap, vocabulary);
+        return new IntFeatureExtractor(lexicon, featureKeyIndexMap, wordMin, wordMax);
+    }
+
+    /**
+     * 语料中每个句子归一化后的字符列表
+     */
+    public List<List<String>> getCharLists() {
+        return charLists;
     }
 
-    private List<String> getNodeFeatures(int index, List<String> charList) {
+    public Map<String, Integer> getFeatureIndexMap() {
+        return featureIndexMap;
+    }
+
+    public Map<String, Integer> getTagIndexMap() {
+        return tagIndexMap;
+    }
+
+    /**
+     * 句子charList中第index个字的全部字符串特征，不存在的特征用"/"占位
+     */
+    public List<String> getNodeFeatures(int index, List<String> charList) {
         List<String> nodeFeatures = new ArrayList<>();
         createCharacterBasedFeature(nodeFeatures, index, charList);
         createWordBasedFeature(nodeFeatures, index, charList);
@@ -256,111 +517,78 @@ public class FeatureExtractor {
     }
 
     private void createWordBasedFeature(List<String> nodeFeatures, int index, List<String> charList) {
-        List<String> prevInList = createPrevInList(nodeFeatures, index, charList);
-        List<String> postInList = createPostInList(nodeFeatures, index, charList);
-        List<String> prevExcludeList = createPrevExcludeList(index, charList);
-        List<String> postExcludeList = createPostExcludeList(index, charList);
-        createLeftBigramWordFeature(prevExcludeList, postInList, nodeFeatures);
-        createRightBigramWordFeature(prevInList, postExcludeList, nodeFeatures);
-    }
-
-    private List<String> createPrevInList(List<String> nodeFeatures, int index, List<String> charList) {
-        List<String> prevInList = new ArrayList<>();
-        for (int range = wordMax; range >= wordMin; range--) {
-            String tempWord = getSubstring(index - range + 1, range, charList);
-            if ("".equals(tempWord)) {
-                nodeFeatures.add("/");
-                prevInList.add("**noWord");
-            } else {
-                if (unigramSet.contains(tempWord)) {
-                    nodeFeatures.add("w-1." + tempWord);
-                    prevInList.add(tempWord);
-                } else {
-                    nodeFeatures.add("/");
-                    prevInList.add("**noWord");
-                }
-            }
-        }
-        return prevInList;
+        int[] prevInWords = createPrevInWords(nodeFeatures, index, charList);
+        int[] postInWords = createPostInWords(nodeFeatures, index, charList);
+        int[] prevExcludeWords = matchPrevWords(index - 1, charList);
+        int[] postExcludeWords = matchPostWords(index + 1, charList);
+        createBigramWordFeature("ww.l.", prevExcludeWords, postInWords, nodeFeatures);
+        createBigramWordFeature("ww.r.", prevInWords, postExcludeWords, nodeFeatures);
     }
 
-    private List<String> createPostInList(List<String> nodeFeatures, int index, List<String> charList) {
-        List<String> postInList = new ArrayList<>();
-        for (int range = wordMax; range >= wordMin; range--) {
-            String tempWord = getSubstring(index, range, charList);
-            if ("".equals(tempWord)) {
-                nodeFeatures.add("/");
-                postInList.add("**noWord");
-            } else {
-                if (unigramSet.contains(tempWord)) {
-                    nodeFeatures.add("w1." + tempWord);
-                    postInList.add(tempWord);
-                } else {
-                    nodeFeatures.add("/");
-                    postInList.add("**noWord");
-                }
-            }
+    private int[] createPrevInWords(List<String> nodeFeatures, int index, List<String> charList) {
+        int[] prevInWords = matchPrevWords(index, charList);
+        for (int wordId : prevInWords) {
+            nodeFeatures.add(wordId >= 0 ? "w-1." + vocabulary.word(wordId) : "/");
         }
-        return postInList;
-    }
-    
-    private List<String> createPrevExcludeList(int index, List<String> charList) {
-        List<String> prevExcludeList = new ArrayList<>();
-        for (int range = wordMax; range >= wordMin; range--) {
-            String tempWord = getSubstring(index - range, range, charList);
-            if ("".equals(tempWord)) {
-                prevExcludeList.add("**noWord");
-            } else {
-                if (unigramSet.contains(tempWord)) {
-                    prevExcludeList.add(tempWord);
-                } else {
-                    prevExcludeList.add("**noWord");
-                }
-            }
+        return prevInWords;
+    }
+
+    private int[] createPostInWords(List<String> nodeFeatures, int index, List<String> charList) {
+        int[] postInWords = matchPostWords(index, charList);
+        for (int wordId : postInWords) {
+            nodeFeatures.add(wordId >= 0 ? "w1." + vocabulary.word(wordId) : "/");
         }
-        return prevExcludeList;
+        return postInWords;
     }
 
-    private List<String> createPostExcludeList(int index, List<String> charList) {
-        List<String> postExcludeList = new ArrayList<>();
-        for (int range = wordMax; range >= wordMin; range--) {
-            String tempWord = getSubstring(index + 1, range, charList);
-            if (".".equals(tempWord)) {
-                postExcludeList.add("**noWord");
-            } else {
-                if (unigramSet.contains(tempWord)) {
-                    postExcludeList.add(tempWord);
-                } else {
-                    postExcludeList.add("**noWord");
-                }
+    /**
+     * 在逆向Trie上从end向左走一遍，返回以end结尾、长度从wordMax到wordMin的词id，没有词时为-1
+     */
+    private int[] matchPrevWords(int end, List<String> charList) {
+        int[] wordIds = new int[wordMax - wordMin + 1];
+        Arrays.fill(wordIds, -1);
+        DoubleArrayTrie suffixTrie = lexicon.getSuffixTrie();
+        int state = DoubleArrayTrie.ROOT;
+        for (int range = 1; range <= wordMax && end - range + 1 >= 0; range++) {
+            state = suffixTrie.walk(state, IntFeatureExtractor.charId(charList.get(end - range + 1)));
+            if (state < 0) {
+                break;
+            }
+            if (range >= wordMin) {
+                wordIds[wordMax - range] = suffixTrie.value(state);
             }
         }
-        return postExcludeList;
+        return wordIds;
     }
 
-    private void createLeftBigramWordFeature(List<String> prevExcludeList,
-                                             List<String> postInList,
-                                             List<String> nodeFeatures) {
-        for (String prevExcludeWord : prevExcludeList) {
-            for (String postInWord : postInList) {
-                String bigram = prevExcludeWord + "*" + postInWord;
-                if (bigramSet.contains(bigram)) {
-                    nodeFeatures.add("ww.l." + bigram);
-                } else {
-                    nodeFeatures.add("/");
-                }
+    /**
+     * 在正向Trie上从start向右走一遍，返回以start开头、长度从wordMax到wordMin的词id，没有词时为-1
+     */
+    private int[] matchPostWords(int start, List<String> charList) {
+        int[] wordIds = new int[wordMax - wordMin + 1];
+        Arrays.fill(wordIds, -1);
+        DoubleArrayTrie prefixTrie = lexicon.getPrefixTrie();
+        int state = DoubleArrayTrie.ROOT;
+        for (int range = 1; range <= wordMax && start + range <= charList.size(); range++) {
+            state = prefixTrie.walk(state, IntFeatureExtractor.charId(charList.get(start + range - 1)));
+            if (state < 0) {
+                break;
+            }
+            if (range >= wordMin) {
+                wordIds[wordMax - range] = prefixTrie.value(state);
             }
         }
+        return wordIds;
     }
 
-    private void createRightBigramWordFeature(List<String> prevInList,
-                                              List<String> postExcludeList,
-                                              List<String> nodeFeatures) {
-        for (String prevInWord : prevInList) {
-            for (String postExcludeWord : postExcludeList) {
-                String bigram = prevInWord + "*" + postExcludeWord;
-                if (bigramSet.contains(bigram)) {
-                    nodeFeatures.add("ww.r." + bigram);
+    /**
+     * 左右两组词两两组合，组合出现在二元组集合中时才构造特征字符串
+     */
+    private void createBigramWordFeature(String prefix, int[] leftWords, int[] rightWords, List<String> nodeFeatures) {
+        for (int leftWord : leftWords) {
+            for (int rightWord : rightWords) {
+                if (leftWord >= 0 && rightWord >= 0 && bigramIndex.contains(leftWord, rightWord)) {
+                    nodeFeatures.add(prefix + vocabulary.word(leftWord) + "*" + vocabulary.word(rightWord));
                 } else {
                     nodeFeatures.add("/");
                 }
@@ -368,50 +596,70 @@ public class FeatureExtractor {
         }
     }
 
-    private String getSubstring(int startIndex, int range, List<String> charList) {
-        if (startIndex < 0) {
-            return "";
+    /**
+     * 按特征字符串的升序依次调用，为特征分配下一个下标
+     */
+    private void featureToIndex(String feature, long count) {
+        if ("/".equals(feature)) {
+            return;
         }
-        if (startIndex >= charList.size()) {
-            return "";
+        // 去除出现频次小于阈值的特征
+        if (count < minFeatureCount) {
+            return;
         }
-        if (startIndex + range >= charList.size() + 1) {
-            return "";
+        if (!featureIndexMap.containsKey(feature)) {
+            featureIndexMap.put(feature, featureIndexMap.size());
         }
-        return String.join("", charList.subList(startIndex, startIndex + range));
     }
 
-    private void featureToIndex(Map<String, Integer> sortedFeatureCountMap) {
-        for (String feature : sortedFeatureCountMap.keySet()) {
-            if ("/".equals(feature)) {
-                continue;
-            }
-            if (!featureIndexMap.containsKey(feature)) {
-                featureIndexMap.put(feature, featureIndexMap.size());
-            }
+    private void tagToIndex() {
+        for (int i = 0; i < TagScheme.COUNT; i++) {
+            tagIndexMap.put(TagScheme.name(i), i);
         }
     }
 
-    private void tagToIndex() {
-        String[] tags = {"B", "B_single", "I", "I_end", "I_first"};
-        for (int i = 0; i < tags.length; i++) {
-            tagIndexMap.put(tags[i], i);
+    /**
+     * 重建后特征重新编号，IncrementalFeatureUpdater之前写出的增量不再适用
+     */
+    private void discardDeltas() {
+        try {
+            IncrementalFeatureUpdater.discardDeltas(featureSaveDir);
+        } catch (Exception e) {
+            errorCounter.increment();
+            e.printStackTrace();
         }
     }
 
     private void saveUnigram() {
         String unigramFile = featureSaveDir + "unigram.txt";
-        writeSetToFile(unigramSet, unigramFile);
+        writeSetToFile(vocabulary, unigramFile);
     }
 
     private void saveBigram() {
         String bigramFile = featureSaveDir + "bigram.txt";
-        writeSetToFile(bigramSet, bigramFile);
+        try {
+            BufferedWriter bufferedWriter = new BufferedWriter(new FileWriter(bigramFile));
+            for (long bigram : bigramIndex.toArray()) {
+                String left = vocabulary.word(BigramIndex.left(bigram));
+                String right = vocabulary.word(BigramIndex.right(bigram));
+                bufferedWriter.write(left + "*" + right + "\n");
+            }
+            bufferedWriter.close();
+        } catch (Exception e) {
+            errorCounter.increment();
+            e.printStackTrace();
+        }
     }
 
     private void saveFeatureIndexMap() {
         String featureIndexFile = featureSaveDir + "feature_index.txt";
         writeMapToFile(featureIndexMap, featureIndexFile);
+        try {
+            BinaryFeatureDictionary.write(featureIndexMap, featureSaveDir + "feature_index.bin");
+        } catch (Exception e) {
+            errorCounter.increment();
+            e.printStackTrace();
+        }
     }
 
     private void saveTagIndexMap() {
@@ -419,7 +667,7 @@ public class FeatureExtractor {
         writeMapToFile(tagIndexMap, tagIndexFile);
     }
 
-    private void writeSetToFile(Set<String> set, String file) {
+    private void writeSetToFile(Iterable<String> set, String file) {
         try {
             BufferedWriter bufferedWriter = new BufferedWriter(new FileWriter(file));
             for (String word : set) {
@@ -427,6 +675,7 @@ public class FeatureExtractor {
             }
             bufferedWriter.close();
         } catch (Exception e) {
+            errorCounter.increment();
             e.printStackTrace();
         }
     }
@@ -441,48 +690,11 @@ public class FeatureExtractor {
             }
             bufferedWriter.close();
         } catch (Exception e) {
+            errorCounter.increment();
             e.printStackTrace();
         }
     }
 
-    private String specialCharNormalize(String line) {
-        StringBuilder stringBuilder = new StringBuilder();
-        char[] specialChars = "-._,|/*:".toCharArray();
-        Set<Character> specialCharSet = new HashSet<>();
-        for (char ch : specialChars) {
-            specialCharSet.add(ch);
-        }
-        for (int i = 0; i < line.length(); i++) {
-            char ch = line.charAt(i);
-            if (specialCharSet.contains(ch)) {
-                stringBuilder.append('&');
-            } else {
-                stringBuilder.append(ch);
-            }
-        }
-        return stringBuilder.toString();
-    }
-
-    private String numberLetterNormalize(char ch) {
-        char[] numberChars = "0123456789.几二三四五六七八九十千万亿兆零１２３４５６７８９０％".toCharArray();
-        char[] letterChars = "ＡＢＣＤＥＦＧＨＩＪＫＬＭＮＯＰＱＲＳＴＵＶＷＸＹＺａｂｃｄｅｆｇｈｉｇｋｌｍｎｏｐｑｒｓｔｕｖｗｘｙｚ／・－".toCharArray();
-        Set<Character> numberCharSet = new HashSet<>();
-        for (char c : numberChars) {
-            numberCharSet.add(c);
-        }
-        Set<Character> letterCharSet = new HashSet<>();
-        for (char c : letterChars) {
-            letterCharSet.add(c);
-        }
-        if (numberCharSet.contains(ch)) {
-            return "**Num";
-        }
-        if (letterCharSet.contains(ch)) {
-            return "**Letter";
-        }
-        return String.valueOf(ch);
-    }
-
     public static void main(String[] args) {
         String resourcesDir = "src/main/resources/";
         String trainFile = resourcesDir + "data/pku_test_gold.utf8";
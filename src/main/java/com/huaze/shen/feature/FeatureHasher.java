@@ -0,0 +1,93 @@
+package com.huaze.shen.feature;
+
+import com.huaze.shen.dict.Vocabulary;
+
+/**
+ * @author Huaze Shen
+ * @date 2026-10-18
+ *
+ * 特征哈希：把特征key(模板加参数)直接哈希到2^bits个槽位之一，不需要特征表。
+ * 带符号哈希：哈希值的最高位决定符号，符号为负的特征编码为~slot(负数)，
+ * 解码和训练时对该槽位的权重取负，碰撞的特征在期望上相互抵消而不是同向累加。
+ *
+ * 词特征的参数是词表中的词id，会随语料变化，因此先换成词内容(归一化字符id序列)的哈希，
+ * 同一个词在不同语料、不同分片构建的词表中都落在同一个槽位。载入后只读，可以在线程间共享。
+ */
+public class FeatureHasher {
+    public static final int DEFAULT_BITS = 20;
+
+    private int bits;
+    private int mask;
+    private Vocabulary vocabulary;
+    private int[] wordHashes;
+
+    public FeatureHasher(int bits, Vocabulary vocabulary) {
+        this.bits = bits;
+        this.mask = (1 << bits) - 1;
+        this.vocabulary = vocabulary;
+        this.wordHashes = new int[vocabulary.size()];
+        for (int wordId = 0; wordId < wordHashes.length; wordId++) {
+            wordHashes[wordId] = contentHash(vocabulary.word(wordId));
+        }
+    }
+
+    public int getBits() {
+        return bits;
+    }
+
+    /**
+     * 槽位个数，即模型的特征数
+     */
+    public int dimension() {
+        return 1 << bits;
+    }
+
+    /**
+     * 特征key对应的带符号特征：符号为正时是槽位本身，为负时是~slot
+     */
+    public int feature(long key) {
+        int template = FeatureKey.template(key);
+        int first = FeatureKey.first(key);
+        int second = FeatureKey.second(key);
+        if (template == FeatureKey.W_PREV || template == FeatureKey.W_POST) {
+            first = wordHash(first);
+        } else if (template == FeatureKey.WW_LEFT || template == FeatureKey.WW_RIGHT) {
+            first = wordHash(first);
+            second = wordHash(second);
+        }
+        long hash = mix(template * 0x9e3779b97f4a7c15L + first);
+        hash = mix(hash + second * 0xc2b2ae3d27d4eb4fL);
+        int slot = (int) hash & mask;
+        return hash < 0 ? ~slot : slot;
+    }
+
+    /**
+     * 带符号特征对应的槽位
+     */
+    public static int slot(int feature) {
+        return feature >= 0 ? feature : ~feature;
+    }
+
+    private int wordHash(int wordId) {
+        // 构造之后新加入词表的词不缓存
+        return wordId < wordHashes.length ? wordHashes[wordId] : contentHash(vocabulary.word(wordId));
+    }
+
+    private static int contentHash(String word) {
+        CharNormalizer charNormalizer = CharNormalizer.getDefault();
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < word.length(); i++) {
+            hash = (hash ^ charNormalizer.charId(word.charAt(i))) * 0x100000001b3L;
+        }
+        return (int) mix(hash);
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,181 @@
+package com.huaze.shen.feature;
+
+import com.huaze.shen.dict.Vocabulary;
+
+/**
+ * @author Huaze Shen
+ * @date 2026-10-18
+ *
+ * 把特征编码成long：模板id占高位，两个参数(字符id或词id)各占28位
+ */
+public final class FeatureKey {
+    public static final int START = 0;
+    public static final int C0 = 1;
+    public static final int C_1 = 2;
+    public static final int C1 = 3;
+    public static final int C_2 = 4;
+    public static final int C2 = 5;
+    public static final int C_1C0 = 6;
+    public static final int C0C1 = 7;
+    public static final int C_2C_1 = 8;
+    public static final int W_PREV = 9;
+    public static final int W_POST = 10;
+    public static final int WW_LEFT = 11;
+    public static final int WW_RIGHT = 12;
+    public static final int TEMPLATE_COUNT = 13;
+
+    /** 数字、字母归一化后的字符id，位于BMP之外，不会与真实字符冲突 */
+    public static final int NUM_ID = 0x10000;
+    public static final int LETTER_ID = 0x10001;
+
+    private static final String[] PREFIXES = {
+            "$$", "c.", "c-1.", "c1.", "c-2.", "c2.", "c-1c.", "cc1.", "c-2c-1.", "w-1.", "w1.", "ww.l.", "ww.r."
+    };
+    private static final int ARG_BITS = 28;
+    private static final long ARG_MASK = (1L << ARG_BITS) - 1;
+
+    private FeatureKey() {
+    }
+
+    public static long of(int template) {
+        return (long) template << (2 * ARG_BITS);
+    }
+
+    public static long of(int template, int a) {
+        return ((long) template << (2 * ARG_BITS)) | ((long) a << ARG_BITS);
+    }
+
+    public static long of(int template, int a, int b) {
+        return ((long) template << (2 * ARG_BITS)) | ((long) a << ARG_BITS) | b;
+    }
+
+    public static int template(long key) {
+        return (int) (key >>> (2 * ARG_BITS));
+    }
+
+    public static int first(long key) {
+        return (int) ((key >>> ARG_BITS) & ARG_MASK);
+    }
+
+    public static int second(long key) {
+        return (int) (key & ARG_MASK);
+    }
+
+    /**
+     * 还原成FeatureExtractor字符串特征的形式
+     */
+    public static String format(long key, Vocabulary vocabulary) {
+        int template = template(key);
+        StringBuilder stringBuilder = new StringBuilder(PREFIXES[template]);
+        switch (template) {
+            case START:
+                break;
+            case C0:
+            case C_1:
+            case C1:
+            case C_2:
+            case C2:
+                appendChar(stringBuilder, first(key));
+                break;
+            case C_1C0:
+            case C0C1:
+            case C_2C_1:
+                appendChar(stringBuilder, first(key));
+                stringBuilder.append('.');
+                appendChar(stringBuilder, second(key));
+                break;
+            case W_PREV:
+            case W_POST:
+                stringBuilder.append(vocabulary.word(first(key)));
+                break;
+            default:
+                stringBuilder.append(vocabulary.word(first(key))).append('*').append(vocabulary.word(second(key)));
+                break;
+        }
+        return stringBuilder.toString();
+    }
+
+    /**
+     * 解析字符串特征，无法解析(如"/"或词不在词表中)时返回-1
+     */
+    public static long parse(String feature, Vocabulary vocabulary) {
+        for (int template = PREFIXES.length - 1; template >= 0; template--) {
+            String prefix = PREFIXES[template];
+            if (!feature.startsWith(prefix)) {
+                continue;
+            }
+            int start = prefix.length();
+            switch (template) {
+                case START:
+                    return feature.length() == start ? of(START) : -1;
+                case C0:
+                case C_1:
+                case C1:
+                case C_2:
+                case C2: {
+                    int a = parseChar(feature, start);
+                    return a >= 0 && start + charLength(a) == feature.length() ? of(template, a) : -1;
+                }
+                case C_1C0:
+                case C0C1:
+                case C_2C_1: {
+                    int a = parseChar(feature, start);
+                    if (a < 0) {
+                        return -1;
+                    }
+                    int dot = start + charLength(a);
+                    if (dot >= feature.length() || feature.charAt(dot) != '.') {
+                        return -1;
+                    }
+                    int b = parseChar(feature, dot + 1);
+                    return b >= 0 && dot + 1 + charLength(b) == feature.length() ? of(template, a, b) : -1;
+                }
+                case W_PREV:
+                case W_POST: {
+                    int a = vocabulary.id(feature.substring(start));
+                    return a >= 0 ? of(template, a) : -1;
+                }
+                default: {
+                    int star = feature.indexOf('*', start);
+                    if (star < 0) {
+                        return -1;
+                    }
+                    int a = vocabulary.id(feature.substring(start, star));
+                    int b = vocabulary.id(feature.substring(star + 1));
+                    return a >= 0 && b >= 0 ? of(template, a, b) : -1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static void appendChar(StringBuilder stringBuilder, int charId) {
+        if (charId == NUM_ID) {
+            stringBuilder.append(CharNormalizer.NUM_TOKEN);
+        } else if (charId == LETTER_ID) {
+            stringBuilder.append(CharNormalizer.LETTER_TOKEN);
+        } else {
+            stringBuilder.append((char) charId);
+        }
+    }
+
+    private static int parseChar(String feature, int start) {
+        if (feature.startsWith(CharNormalizer.NUM_TOKEN, start)) {
+            return NUM_ID;
+        }
+        if (feature.startsWith(CharNormalizer.LETTER_TOKEN, start)) {
+            return LETTER_ID;
+        }
+        return start < feature.length() ? feature.charAt(start) : -1;
+    }
+
+    private static int charLength(int charId) {
+        if (charId == NUM_ID) {
+            return CharNormalizer.NUM_TOKEN.length();
+        }
+        if (charId == LETTER_ID) {
+            return CharNormalizer.LETTER_TOKEN.length();
+        }
+        return 1;
+    }
+}
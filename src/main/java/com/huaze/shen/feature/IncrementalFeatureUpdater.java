@@ -0,0 +1,423 @@
+package com.huaze.shen.feature;
+
+import com.huaze.shen.dict.BigramIndex;
+import com.huaze.shen.dict.BinaryFeatureDictionary;
+import com.huaze.shen.dict.Lexicon;
+import com.huaze.shen.dict.Vocabulary;
+import com.huaze.shen.util.LongIntHashMap;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * @author Huaze Shen
+ * @date 2026-10-18
+ *
+ * 增量更新特征表：在FeatureExtractor保存的unigram.txt、bigram.txt、feature_index.txt基础上，
+ * 只处理新增的文本，新特征的下标接在当前最大下标之后，已有下标保持不变。
+ * 每次更新写出第n个增量文件unigram_delta_n.txt、bigram_delta_n.txt、feature_index_delta_n.txt，
+ * 并在feature_manifest.txt中追加一行记录。基础特征表优先通过feature_index.bin映射查询，不载入内存。
+ *
+ * 新词只作用于新文本：旧文本中由新词产生的词特征要等到全量重建才会出现。
+ * 次数阈值只按新文本中的出现次数计算。
+ *
+ * 全量重建会重新编号基础特征，之前的增量随之失效：FeatureExtractor和StreamingFeatureBuilder重建前调用discardDeltas，
+ * 清单中另记录feature_index.txt的长度和修改时间，与当前文件不一致时忽略清单中的增量。
+ */
+public class IncrementalFeatureUpdater {
+    public static final String MANIFEST_FILE = "feature_manifest.txt";
+
+    private static final int WORD_MAX = 6;
+    private static final int WORD_MIN = 2;
+
+    private String featureSaveDir;
+    private int minFeatureCount = 1;
+
+    /**
+     * featureSaveDir以"/"结尾
+     */
+    public IncrementalFeatureUpdater(String featureSaveDir) {
+        this.featureSaveDir = featureSaveDir;
+    }
+
+    public void setMinFeatureCount(int minFeatureCount) {
+        this.minFeatureCount = minFeatureCount;
+    }
+
+    /**
+     * 处理新文本，写出增量文件并更新清单，返回本次增量的记录
+     */
+    public Delta update(String newTextFile) throws IOException {
+        Manifest manifest = Manifest.load(featureSaveDir);
+        Vocabulary vocabulary = new Vocabulary();
+        BigramIndex bigramIndex = new BigramIndex();
+        readLexicon(featureSaveDir, manifest, vocabulary, bigramIndex);
+        int firstWordId = vocabulary.size();
+        List<Long> newBigrams = new ArrayList<>();
+        try (BufferedReader bufferedReader = new BufferedReader(new FileReader(newTextFile))) {
+            String line;
+            while ((line = bufferedReader.readLine()) != null) {
+                String[] lineSplit = FeatureExtractor.splitLine(line);
+                if (lineSplit == null) {
+                    continue;
+                }
+                int prevWordId = -1;
+                for (String word : lineSplit) {
+                    int wordId = vocabulary.add(word);
+                    if (prevWordId >= 0 && bigramIndex.add(prevWordId, wordId)) {
+                        newBigrams.add(BigramIndex.pack(prevWordId, wordId));
+                    }
+                    prevWordId = wordId;
+                }
+            }
+        }
+        Lexicon lexicon = new Lexicon(vocabulary, bigramIndex);
+        List<String> newFeatures = findNewFeatures(newTextFile, lexicon, manifest);
+        Collections.sort(newFeatures);
+
+        int sequence = manifest.deltas.size() + 1;
+        Delta delta = new Delta(sequence, manifest.nextFeatureId(), newFeatures.size(),
+                vocabulary.size() - firstWordId, newBigrams.size(), new File(newTextFile).getName());
+        try (BufferedWriter bufferedWriter = new BufferedWriter(new FileWriter(featureSaveDir + delta.unigramFile()))) {
+            for (int id = firstWordId; id < vocabulary.size(); id++) {
+                bufferedWriter.write(vocabulary.word(id) + "\n");
+            }
+        }
+        try (BufferedWriter bufferedWriter = new BufferedWriter(new FileWriter(featureSaveDir + delta.bigramFile()))) {
+            for (long bigram : newBigrams) {
+                String left = vocabulary.word(BigramIndex.left(bigram));
+                String right = vocabulary.word(BigramIndex.right(bigram));
+                bufferedWriter.write(left + "*" + right + "\n");
+            }
+        }
+        try (BufferedWriter bufferedWriter =
+                     new BufferedWriter(new FileWriter(featureSaveDir + delta.featureIndexFile()))) {
+            int featureId = delta.firstFeatureId;
+            for (String feature : newFeatures) {
+                bufferedWriter.write(feature + "\t" + featureId++ + "\n");
+            }
+        }
+        manifest.deltas.add(delta);
+        manifest.save(featureSaveDir);
+        return delta;
+    }
+
+    /**
+     * 统计新文本中的特征，返回不在基础特征表和已有增量中、且次数达到阈值的特征
+     */
+    private List<String> findNewFeatures(String newTextFile, Lexicon lexicon, Manifest manifest) throws IOException {
+        IntFeatureExtractor intFeatureExtractor = new IntFeatureExtractor(lexicon, null, WORD_MIN, WORD_MAX);
+        LongIntHashMap featureKeyCountMap = new LongIntHashMap();
+        long[] featureKeys = new long[intFeatureExtractor.maxNodeFeatures()];
+        try (BufferedReader bufferedReader = new BufferedReader(new FileReader(newTextFile))) {
+            String line;
+            while ((line = bufferedReader.readLine()) != null) {
+                int length = intFeatureExtractor.setSentence(line);
+                for (int index = 0; index < length; index++) {
+                    int count = intFeatureExtractor.getNodeFeatureKeys(index, featureKeys);
+                    for (int i = 0; i < count; i++) {
+                        featureKeyCountMap.addTo(featureKeys[i], 1);
+                    }
+                }
+            }
+        }
+        Set<String> deltaFeatures = new HashSet<>();
+        for (Delta delta : manifest.deltas) {
+            readFeatureIndex(featureSaveDir + delta.featureIndexFile(), (feature, index) -> deltaFeatures.add(feature));
+        }
+        BaseFeatures baseFeatures = BaseFeatures.open(featureSaveDir);
+        Vocabulary vocabulary = lexicon.getVocabulary();
+        List<String> newFeatures = new ArrayList<>();
+        featureKeyCountMap.forEach((key, count) -> {
+            if (count < minFeatureCount) {
+                return;
+            }
+            String feature = FeatureKey.format(key, vocabulary);
+            if (!baseFeatures.contains(feature) && !deltaFeatures.contains(feature)) {
+                newFeatures.add(feature);
+            }
+        });
+        return newFeatures;
+    }
+
+    /**
+     * 删除清单和清单中记录的增量文件，全量重建基础特征表之前调用。先删清单，中途失败时剩下的增量文件不再被引用
+     */
+    public static void discardDeltas(String featureSaveDir) throws IOException {
+        File manifestFile = new File(featureSaveDir + MANIFEST_FILE);
+        if (!manifestFile.exists()) {
+            return;
+        }
+        Manifest manifest = Manifest.read(manifestFile);
+        Files.delete(manifestFile.toPath());
+        for (Delta delta : manifest.deltas) {
+            Files.deleteIfExists(new File(featureSaveDir + delta.unigramFile()).toPath());
+            Files.deleteIfExists(new File(featureSaveDir + delta.bigramFile()).toPath());
+            Files.deleteIfExists(new File(featureSaveDir + delta.featureIndexFile()).toPath());
+        }
+    }
+
+    /**
+     * 载入基础词表和所有增量中的词、词二元组
+     */
+    public static Lexicon loadLexicon(String featureSaveDir) throws IOException {
+        Vocabulary vocabulary = new Vocabulary();
+        BigramIndex bigramIndex = new BigramIndex();
+        readLexicon(featureSaveDir, Manifest.load(featureSaveDir), vocabulary, bigramIndex);
+        return new Lexicon(vocabulary, bigramIndex);
+    }
+
+    /**
+     * 载入基础特征表并依次并入所有增量
+     */
+    public static Map<String, Integer> loadFeatureIndexMap(String featureSaveDir) throws IOException {
+        Map<String, Integer> featureIndexMap = new LinkedHashMap<>();
+        readFeatureIndex(featureSaveDir + "feature_index.txt", featureIndexMap::put);
+        for (Delta delta : Manifest.load(featureSaveDir).deltas) {
+            readFeatureIndex(featureSaveDir + delta.featureIndexFile(), featureIndexMap::put);
+        }
+        return featureIndexMap;
+    }
+
+    /**
+     * 基于基础特征表和所有增量创建整数特征抽取器
+     */
+    public static IntFeatureExtractor createIntFeatureExtractor(String featureSaveDir) throws IOException {
+        Lexicon lexicon = loadLexicon(featureSaveDir);
+        LongIntHashMap featureKeyIndexMap = IntFeatureExtractor.createFeatureKeyIndexMap(
+                loadFeatureIndexMap(featureSaveDir), lexicon.getVocabulary());
+        return new IntFeatureExtractor(lexicon, featureKeyIndexMap, WORD_MIN, WORD_MAX);
+    }
+
+    private static void readLexicon(String featureSaveDir, Manifest manifest, Vocabulary vocabulary,
+                                    BigramIndex bigramIndex) throws IOException {
+        Lexicon.readUnigrams(featureSaveDir + "unigram.txt", vocabulary);
+        for (Delta delta : manifest.deltas) {
+            Lexicon.readUnigrams(featureSaveDir + delta.unigramFile(), vocabulary);
+        }
+        Lexicon.readBigrams(featureSaveDir + "bigram.txt", vocabulary, bigramIndex);
+        for (Delta delta : manifest.deltas) {
+            Lexicon.readBigrams(featureSaveDir + delta.bigramFile(), vocabulary, bigramIndex);
+        }
+    }
+
+    /**
+     * 不早于feature_index.txt生成的feature_index.bin，没有时返回null
+     * (StreamingFeatureBuilder只写文本特征表，旧的二进制字典可能已经过期)
+     */
+    private static File binaryFeatureFile(String featureSaveDir) {
+        File binaryFile = new File(featureSaveDir + "feature_index.bin");
+        File textFile = new File(featureSaveDir + "feature_index.txt");
+        if (binaryFile.exists() && binaryFile.lastModified() >= textFile.lastModified()) {
+            return binaryFile;
+        }
+        return null;
+    }
+
+    private interface FeatureIndexVisitor {
+        void visit(String feature, int index);
+    }
+
+    private static void readFeatureIndex(String file, FeatureIndexVisitor visitor) throws IOException {
+        try (BufferedReader bufferedReader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = bufferedReader.readLine()) != null) {
+                int tab = line.lastIndexOf('\t');
+                if (tab > 0) {
+                    visitor.visit(line.substring(0, tab), Integer.parseInt(line.substring(tab + 1)));
+                }
+            }
+        }
+    }
+
+    /**
+     * 基础特征表：有feature_index.bin时映射查询，否则载入feature_index.txt中的特征
+     */
+    private static class BaseFeatures {
+        private BinaryFeatureDictionary binaryFeatureDictionary;
+        private Set<String> features;
+
+        static BaseFeatures open(String featureSaveDir) throws IOException {
+            BaseFeatures baseFeatures = new BaseFeatures();
+            File binaryFile = binaryFeatureFile(featureSaveDir);
+            if (binaryFile != null) {
+                baseFeatures.binaryFeatureDictionary = BinaryFeatureDictionary.open(binaryFile.getPath());
+            } else {
+                Set<String> features = new HashSet<>();
+                readFeatureIndex(featureSaveDir + "feature_index.txt", (feature, index) -> features.add(feature));
+                baseFeatures.features = features;
+            }
+            return baseFeatures;
+        }
+
+        boolean contains(String feature) {
+            if (binaryFeatureDictionary != null) {
+                return binaryFeatureDictionary.get(feature) >= 0;
+            }
+            return features.contains(feature);
+        }
+    }
+
+    /**
+     * 一次增量更新的记录
+     */
+    public static class Delta {
+        private int sequence;
+        private int firstFeatureId;
+        private int featureCount;
+        private int wordCount;
+        private int bigramCount;
+        private String source;
+
+        Delta(int sequence, int firstFeatureId, int featureCount, int wordCount, int bigramCount, String source) {
+            this.sequence = sequence;
+            this.firstFeatureId = firstFeatureId;
+            this.featureCount = featureCount;
+            this.wordCount = wordCount;
+            this.bigramCount = bigramCount;
+            this.source = source;
+        }
+
+        public int getSequence() {
+            return sequence;
+        }
+
+        public int getFirstFeatureId() {
+            return firstFeatureId;
+        }
+
+        public int getFeatureCount() {
+            return featureCount;
+        }
+
+        public int getWordCount() {
+            return wordCount;
+        }
+
+        public int getBigramCount() {
+            return bigramCount;
+        }
+
+        String unigramFile() {
+            return "unigram_delta_" + sequence + ".txt";
+        }
+
+        String bigramFile() {
+            return "bigram_delta_" + sequence + ".txt";
+        }
+
+        String featureIndexFile() {
+            return "feature_index_delta_" + sequence + ".txt";
+        }
+
+        @Override
+        public String toString() {
+            return "delta " + sequence + ": features [" + firstFeatureId + ", " + (firstFeatureId + featureCount)
+                    + "), " + wordCount + " words, " + bigramCount + " bigrams from " + source;
+        }
+    }
+
+    /**
+     * 清单文件，每行以制表符分隔：
+     * base 基础特征数 feature_index.txt的长度 feature_index.txt的修改时间
+     * delta 序号 起始下标 特征数 新词数 新二元组数 来源文件
+     */
+    private static class Manifest {
+        private int baseFeatureCount;
+        private long baseLength;
+        private long baseModified;
+        private List<Delta> deltas = new ArrayList<>();
+
+        /**
+         * 载入清单；没有清单，或清单记录的基础特征表与当前的feature_index.txt不一致(已全量重建)时，返回没有增量的新清单
+         */
+        static Manifest load(String featureSaveDir) throws IOException {
+            File manifestFile = new File(featureSaveDir + MANIFEST_FILE);
+            File baseFile = new File(featureSaveDir + "feature_index.txt");
+            if (manifestFile.exists()) {
+                Manifest manifest = read(manifestFile);
+                if (manifest.baseLength == baseFile.length() && manifest.baseModified == baseFile.lastModified()) {
+                    return manifest;
+                }
+            }
+            Manifest manifest = new Manifest();
+            manifest.baseFeatureCount = countBaseFeatures(featureSaveDir);
+            manifest.baseLength = baseFile.length();
+            manifest.baseModified = baseFile.lastModified();
+            return manifest;
+        }
+
+        static Manifest read(File manifestFile) throws IOException {
+            Manifest manifest = new Manifest();
+            // 没有记录基础特征表的清单无法校验，按不一致处理
+            manifest.baseLength = -1;
+            try (BufferedReader bufferedReader = new BufferedReader(new FileReader(manifestFile))) {
+                String line;
+                while ((line = bufferedReader.readLine()) != null) {
+                    String[] fields = line.split("\t");
+                    if ("base".equals(fields[0])) {
+                        manifest.baseFeatureCount = Integer.parseInt(fields[1]);
+                        if (fields.length > 3) {
+                            manifest.baseLength = Long.parseLong(fields[2]);
+                            manifest.baseModified = Long.parseLong(fields[3]);
+                        }
+                    } else if ("delta".equals(fields[0])) {
+                        manifest.deltas.add(new Delta(Integer.parseInt(fields[1]), Integer.parseInt(fields[2]),
+                                Integer.parseInt(fields[3]), Integer.parseInt(fields[4]),
+                                Integer.parseInt(fields[5]), fields[6]));
+                    }
+                }
+            }
+            return manifest;
+        }
+
+        void save(String featureSaveDir) throws IOException {
+            File manifestFile = new File(featureSaveDir + MANIFEST_FILE);
+            File tempFile = new File(featureSaveDir + MANIFEST_FILE + ".tmp");
+            try (BufferedWriter bufferedWriter = new BufferedWriter(new FileWriter(tempFile))) {
+                bufferedWriter.write("base\t" + baseFeatureCount + "\t" + baseLength + "\t" + baseModified + "\n");
+                for (Delta delta : deltas) {
+                    bufferedWriter.write("delta\t" + delta.sequence + "\t" + delta.firstFeatureId + "\t"
+                            + delta.featureCount + "\t" + delta.wordCount + "\t" + delta.bigramCount + "\t"
+                            + delta.source + "\n");
+                }
+            }
+            // 原子替换，更新中途失败时旧清单仍然有效
+            Files.move(tempFile.toPath(), manifestFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        int nextFeatureId() {
+            if (deltas.isEmpty()) {
+                return baseFeatureCount;
+            }
+            Delta last = deltas.get(deltas.size() - 1);
+            return last.firstFeatureId + last.featureCount;
+        }
+
+        /**
+         * 下标从0连续分配，基础特征数即最大下标加一
+         */
+        private static int countBaseFeatures(String featureSaveDir) throws IOException {
+            File binaryFile = binaryFeatureFile(featureSaveDir);
+            if (binaryFile != null) {
+                return BinaryFeatureDictionary.open(binaryFile.getPath()).size();
+            }
+            int[] maxIndex = {-1};
+            readFeatureIndex(featureSaveDir + "feature_index.txt",
+                    (feature, index) -> maxIndex[0] = Math.max(maxIndex[0], index));
+            return maxIndex[0] + 1;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        String featureSaveDir = args.length > 1 ? args[1] : "src/main/resources/data/feature_save/";
+        IncrementalFeatureUpdater incrementalFeatureUpdater = new IncrementalFeatureUpdater(featureSaveDir);
+        if (args.length > 2) {
+            incrementalFeatureUpdater.setMinFeatureCount(Integer.parseInt(args[2]));
+        }
+        System.out.println(incrementalFeatureUpdater.update(args[0]));
+    }
+}
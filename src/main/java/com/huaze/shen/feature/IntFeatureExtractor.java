@@ -0,0 +1,383 @@
+package com.huaze.shen.feature;
+
+import com.huaze.shen.dict.Lexicon;
+import com.huaze.shen.dict.Vocabulary;
+import com.huaze.shen.metrics.Counter;
+import com.huaze.shen.metrics.Metrics;
+import com.huaze.shen.util.LongIntHashMap;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author Huaze Shen
+ * @date 2026-10-18
+ *
+ * 基于整数的特征抽取：每个句子只把字符映射成id一次，节点特征写入可复用的数组，
+ * 与FeatureExtractor.getNodeFeatures产生相同的特征(去掉"/"占位符)，顺序也相同。
+ * 内部持有句子级缓冲区，非线程安全，每个线程使用一个实例。
+ */
+public class IntFeatureExtractor {
+    public static final String WORD_LOOKUPS = "lexicon.word.lookups";
+    public static final String WORD_HITS = "lexicon.word.hits";
+    public static final String BIGRAM_LOOKUPS = "lexicon.bigram.lookups";
+    public static final String BIGRAM_HITS = "lexicon.bigram.hits";
+
+    private CharNormalizer charNormalizer = CharNormalizer.getDefault();
+    private Lexicon lexicon;
+    private LongIntHashMap featureIndexMap;
+    private FeatureHasher featureHasher;
+    private int wordMin;
+    private int wordMax;
+    private int span;
+    private int maxNodeFeatures;
+
+    private int[] charIds = new int[64];
+    private char[] sourceChars = new char[64];
+    private boolean[] wordStarts = new boolean[64];
+    private int length;
+    private int[] prevWords = new int[0];
+    private int[] postWords = new int[0];
+    private long[] keyBuffer;
+    // 词二元组的查询次数先累加在实例字段中，每个句子合并一次到共享计数器
+    private long bigramLookups;
+    private long bigramHits;
+    private Counter wordLookupCounter;
+    private Counter wordHitCounter;
+    private Counter bigramLookupCounter;
+    private Counter bigramHitCounter;
+
+    public IntFeatureExtractor(Lexicon lexicon, LongIntHashMap featureIndexMap, int wordMin, int wordMax) {
+        this.lexicon = lexicon;
+        this.featureIndexMap = featureIndexMap;
+        this.wordMin = wordMin;
+        this.wordMax = wordMax;
+        this.span = wordMax - wordMin + 1;
+        this.maxNodeFeatures = 9 + 2 * span + 2 * span * span;
+        this.keyBuffer = new long[maxNodeFeatures];
+        this.wordLookupCounter = Metrics.get().counter(WORD_LOOKUPS);
+        this.wordHitCounter = Metrics.get().counter(WORD_HITS);
+        this.bigramLookupCounter = Metrics.get().counter(BIGRAM_LOOKUPS);
+        this.bigramHitCounter = Metrics.get().counter(BIGRAM_HITS);
+    }
+
+    /**
+     * 把字符串特征表转换成特征key到下标的映射，无法解析的特征(如"/")被忽略
+     */
+    public static LongIntHashMap createFeatureKeyIndexMap(Map<String, Integer> featureIndexMap, Vocabulary vocabulary) {
+        LongIntHashMap keyIndexMap = new LongIntHashMap(featureIndexMap.size());
+        for (Map.Entry<String, Integer> entry : featureIndexMap.entrySet()) {
+            long key = FeatureKey.parse(entry.getKey(), vocabulary);
+            if (key >= 0) {
+                keyIndexMap.put(key, entry.getValue());
+            }
+        }
+        return keyIndexMap;
+    }
+
+    /**
+     * 共享词典和特征表、拥有独立缓冲区的新实例，供其他线程使用
+     */
+    public IntFeatureExtractor copy() {
+        IntFeatureExtractor intFeatureExtractor = new IntFeatureExtractor(lexicon, featureIndexMap, wordMin, wordMax);
+        intFeatureExtractor.charNormalizer = charNormalizer;
+        intFeatureExtractor.featureHasher = featureHasher;
+        return intFeatureExtractor;
+    }
+
+    /**
+     * 使用从其他类别表载入的归一化规则，默认为CharNormalizer.getDefault()
+     */
+    public void setCharNormalizer(CharNormalizer charNormalizer) {
+        this.charNormalizer = charNormalizer;
+    }
+
+    /**
+     * 开启特征哈希模式：getNodeFeatures不再查特征表，而是输出带符号的槽位(见FeatureHasher)，
+     * 此时featureIndexMap可以为null。传入null恢复特征表模式。
+     */
+    public void setFeatureHasher(FeatureHasher featureHasher) {
+        this.featureHasher = featureHasher;
+    }
+
+    public FeatureHasher getFeatureHasher() {
+        return featureHasher;
+    }
+
+    public Lexicon getLexicon() {
+        return lexicon;
+    }
+
+    public LongIntHashMap getFeatureIndexMap() {
+        return featureIndexMap;
+    }
+
+    public Vocabulary getVocabulary() {
+        return lexicon.getVocabulary();
+    }
+
+    public int getWordMin() {
+        return wordMin;
+    }
+
+    public int getWordMax() {
+        return wordMax;
+    }
+
+    /**
+     * 单个节点最多产生的特征数
+     */
+    public int maxNodeFeatures() {
+        return maxNodeFeatures;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public int charId(int index) {
+        return charIds[index];
+    }
+
+    /**
+     * setSentence载入的原始字符(未归一化、去掉空格)中的第index个
+     */
+    public char sourceChar(int index) {
+        return sourceChars[index];
+    }
+
+    /**
+     * setSentence载入的原始字符(未归一化、去掉空格)中[start, end)组成的字符串
+     */
+    public String substring(int start, int end) {
+        return new String(sourceChars, start, end - start);
+    }
+
+    /**
+     * 载入一行原始文本：去掉首尾空白和词间的空格、制表符，做特殊字符与数字字母归一化。
+     * 也可以直接传入CharBuffer，不构造中间字符串。
+     */
+    public int setSentence(CharSequence line) {
+        ensureCapacity(line.length());
+        length = charNormalizer.normalize(line, charIds, sourceChars, wordStarts);
+        matchWords();
+        return length;
+    }
+
+    /**
+     * 只做setSentence的归一化部分，不匹配词典，之后可以读取charId和substring。
+     * 需要节点特征时再调用matchLexicon，例如先用归一化结果查询分词缓存。
+     */
+    public int normalizeSentence(CharSequence line) {
+        ensureCapacity(line.length());
+        length = charNormalizer.normalize(line, charIds, sourceChars, wordStarts);
+        return length;
+    }
+
+    /**
+     * 对normalizeSentence载入的句子做词典匹配，完成后可以抽取节点特征
+     */
+    public void matchLexicon() {
+        matchWords();
+    }
+
+    /**
+     * 载入chars[offset, offset + count)中的一行原始文本
+     */
+    public int setSentence(char[] chars, int offset, int count) {
+        ensureCapacity(count);
+        length = charNormalizer.normalize(chars, offset, count, charIds, sourceChars, wordStarts);
+        matchWords();
+        return length;
+    }
+
+    /**
+     * 按setSentence时空格切分出的词给每个字打标签，写入tags并返回句子长度
+     */
+    public int getTags(byte[] tags) {
+        int wordBegin = 0;
+        for (int i = 1; i <= length; i++) {
+            if (i == length || wordStarts[i]) {
+                int wordLength = i - wordBegin;
+                for (int j = 0; j < wordLength; j++) {
+                    tags[wordBegin + j] = (byte) TagScheme.tagOf(j, wordLength);
+                }
+                wordBegin = i;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * 特征表中的特征个数，特征哈希模式下为槽位个数
+     */
+    public int featureCount() {
+        return featureHasher != null ? featureHasher.dimension() : featureIndexMap.size();
+    }
+
+    /**
+     * 载入已经归一化的字符列表(FeatureExtractor中charList的形式)
+     */
+    public int setNormalizedSentence(List<String> charList) {
+        ensureCapacity(charList.size());
+        length = charList.size();
+        for (int i = 0; i < length; i++) {
+            charIds[i] = charId(charList.get(i));
+        }
+        matchWords();
+        return length;
+    }
+
+    /**
+     * 把第index个节点的特征key写入keys，返回特征个数
+     */
+    public int getNodeFeatureKeys(int index, long[] keys) {
+        int count = 0;
+        keys[count++] = FeatureKey.of(FeatureKey.START);
+        keys[count++] = FeatureKey.of(FeatureKey.C0, charIds[index]);
+        if (index > 0) {
+            keys[count++] = FeatureKey.of(FeatureKey.C_1, charIds[index - 1]);
+        }
+        if (index < length - 1) {
+            keys[count++] = FeatureKey.of(FeatureKey.C1, charIds[index + 1]);
+        }
+        if (index > 1) {
+            keys[count++] = FeatureKey.of(FeatureKey.C_2, charIds[index - 2]);
+        }
+        if (index < length - 2) {
+            keys[count++] = FeatureKey.of(FeatureKey.C2, charIds[index + 2]);
+        }
+        if (index > 0) {
+            keys[count++] = FeatureKey.of(FeatureKey.C_1C0, charIds[index - 1], charIds[index]);
+        }
+        if (index < length - 1) {
+            keys[count++] = FeatureKey.of(FeatureKey.C0C1, charIds[index], charIds[index + 1]);
+        }
+        if (index > 1) {
+            keys[count++] = FeatureKey.of(FeatureKey.C_2C_1, charIds[index - 2], charIds[index - 1]);
+        }
+        int prevInBase = index * span;
+        int postInBase = index * span;
+        for (int k = 0; k < span; k++) {
+            int word = prevWords[prevInBase + k];
+            if (word >= 0) {
+                keys[count++] = FeatureKey.of(FeatureKey.W_PREV, word);
+            }
+        }
+        for (int k = 0; k < span; k++) {
+            int word = postWords[postInBase + k];
+            if (word >= 0) {
+                keys[count++] = FeatureKey.of(FeatureKey.W_POST, word);
+            }
+        }
+        // 不含当前字的前一个词即以index - 1结尾的词，不含当前字的后一个词即以index + 1开头的词
+        if (index > 0) {
+            count = addBigramKeys(FeatureKey.WW_LEFT, prevWords, (index - 1) * span, postWords, postInBase, keys, count);
+        }
+        if (index < length - 1) {
+            count = addBigramKeys(FeatureKey.WW_RIGHT, prevWords, prevInBase, postWords, (index + 1) * span, keys, count);
+        }
+        if (index == length - 1) {
+            flushBigramCounts();
+        }
+        return count;
+    }
+
+    /**
+     * 把第index个节点的特征下标写入features，不在特征表中的特征被跳过，返回特征个数。
+     * 特征哈希模式下每个特征都有槽位，符号为负的特征写为~slot。
+     */
+    public int getNodeFeatures(int index, int[] features) {
+        int keyCount = getNodeFeatureKeys(index, keyBuffer);
+        if (featureHasher != null) {
+            for (int i = 0; i < keyCount; i++) {
+                features[i] = featureHasher.feature(keyBuffer[i]);
+            }
+            return keyCount;
+        }
+        int count = 0;
+        for (int i = 0; i < keyCount; i++) {
+            int featureIndex = featureIndexMap.get(keyBuffer[i], -1);
+            if (featureIndex >= 0) {
+                features[count++] = featureIndex;
+            }
+        }
+        return count;
+    }
+
+    private int addBigramKeys(int template, int[] leftWords, int leftBase, int[] rightWords, int rightBase,
+                              long[] keys, int count) {
+        for (int i = 0; i < span; i++) {
+            int left = leftWords[leftBase + i];
+            if (left < 0) {
+                continue;
+            }
+            for (int j = 0; j < span; j++) {
+                int right = rightWords[rightBase + j];
+                if (right < 0) {
+                    continue;
+                }
+                bigramLookups++;
+                if (lexicon.containsBigram(left, right)) {
+                    bigramHits++;
+                    keys[count++] = FeatureKey.of(template, left, right);
+                }
+            }
+        }
+        return count;
+    }
+
+    private void matchWords() {
+        int size = length * span;
+        if (prevWords.length < size) {
+            prevWords = new int[Math.max(size, prevWords.length * 2)];
+            postWords = new int[prevWords.length];
+        }
+        lexicon.matchWords(charIds, length, wordMin, wordMax, prevWords, postWords);
+        flushBigramCounts();
+        // 只统计不越过句子边界的窗口
+        long lookups = 0;
+        int hits = 0;
+        for (int index = 0; index < length; index++) {
+            lookups += Math.max(0, Math.min(span, index + 2 - wordMin));
+            lookups += Math.max(0, Math.min(span, length - index + 1 - wordMin));
+        }
+        for (int i = 0; i < size; i++) {
+            if (prevWords[i] >= 0) {
+                hits++;
+            }
+            if (postWords[i] >= 0) {
+                hits++;
+            }
+        }
+        wordLookupCounter.add(lookups);
+        wordHitCounter.add(hits);
+    }
+
+    private void flushBigramCounts() {
+        if (bigramLookups > 0) {
+            bigramLookupCounter.add(bigramLookups);
+            bigramHitCounter.add(bigramHits);
+            bigramLookups = 0;
+            bigramHits = 0;
+        }
+    }
+
+    /**
+     * 归一化后的字符(单个字符、"**Num"或"**Letter")对应的字符id
+     */
+    static int charId(String normalizedChar) {
+        if (normalizedChar.length() == 1) {
+            return normalizedChar.charAt(0);
+        }
+        return CharNormalizer.NUM_TOKEN.equals(normalizedChar) ? FeatureKey.NUM_ID : FeatureKey.LETTER_ID;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (charIds.length < capacity) {
+            charIds = new int[Math.max(capacity, charIds.length * 2)];
+            sourceChars = new char[charIds.length];
+            wordStarts = new boolean[charIds.length];
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.huaze.shen.feature;
+
+import com.huaze.shen.dict.BigramIndex;
+import com.huaze.shen.dict.Lexicon;
+import com.huaze.shen.dict.Vocabulary;
+import com.huaze.shen.util.LongIntHashMap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * @author Huaze Shen
+ * @date 2026-10-18
+ *
+ * 在ForkJoinPool上并行构建词表和统计特征：按句子区间二分切片，每个切片独立统计，
+ * 再按切片顺序自底向上归并。左侧切片先于右侧合并，所以词id与串行构建时首次出现的顺序一致。
+ */
+class ParallelFeatureBuilder {
+    static final int DEFAULT_SHARD_SIZE = 512;
+
+    private ForkJoinPool forkJoinPool;
+    private int shardSize;
+
+    ParallelFeatureBuilder(ForkJoinPool forkJoinPool, int shardSize) {
+        this.forkJoinPool = forkJoinPool;
+        this.shardSize = shardSize;
+    }
+
+    /**
+     * 统计词表、词二元组，并得到每个句子归一化后的字符列表
+     */
+    VocabularyShard buildVocabulary(List<String> lines) {
+        return forkJoinPool.invoke(new VocabularyTask(lines, 0, lines.size()));
+    }
+
+    /**
+     * 统计每个特征key出现的次数
+     */
+    LongIntHashMap countFeatures(List<List<String>> charLists, Lexicon lexicon, int wordMin, int wordMax) {
+        return forkJoinPool.invoke(new FeatureCountTask(charLists, 0, charLists.size(), lexicon, wordMin, wordMax));
+    }
+
+    static class VocabularyShard {
+        Vocabulary vocabulary = new Vocabulary();
+        BigramIndex bigramIndex = new BigramIndex();
+        List<List<String>> charLists = new ArrayList<>();
+
+        /**
+         * 把右侧切片并入当前切片，右侧的词按其局部id顺序追加
+         */
+        void merge(VocabularyShard right) {
+            int[] idMap = new int[right.vocabulary.size()];
+            for (int id = 0; id < idMap.length; id++) {
+                idMap[id] = vocabulary.add(right.vocabulary.word(id));
+            }
+            for (long bigram : right.bigramIndex.toArray()) {
+                bigramIndex.add(idMap[BigramIndex.left(bigram)], idMap[BigramIndex.right(bigram)]);
+            }
+            charLists.addAll(right.charLists);
+        }
+    }
+
+    private class VocabularyTask extends RecursiveTask<VocabularyShard> {
+        private static final long serialVersionUID = 1L;
+
+        private List<String> lines;
+        private int from;
+        private int to;
+
+        VocabularyTask(List<String> lines, int from, int to) {
+            this.lines = lines;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected VocabularyShard compute() {
+            if (to - from <= shardSize) {
+                VocabularyShard shard = new VocabularyShard();
+                for (int i = from; i < to; i++) {
+                    String[] lineSplit = FeatureExtractor.splitLine(lines.get(i));
+                    if (lineSplit == null) {
+                        continue;
+                    }
+                    int prevWordId = -1;
+                    for (String word : lineSplit) {
+                        int wordId = shard.vocabulary.add(word);
+                        if (prevWordId >= 0) {
+                            shard.bigramIndex.add(prevWordId, wordId);
+                        }
+                        prevWordId = wordId;
+                    }
+                    shard.charLists.add(FeatureExtractor.createCharList(lineSplit));
+                }
+                return shard;
+            }
+            int middle = (from + to) >>> 1;
+            VocabularyTask leftTask = new VocabularyTask(lines, from, middle);
+            VocabularyTask rightTask = new VocabularyTask(lines, middle, to);
+            leftTask.fork();
+            VocabularyShard right = rightTask.compute();
+            VocabularyShard left = leftTask.join();
+            left.merge(right);
+            return left;
+        }
+    }
+
+    private class FeatureCountTask extends RecursiveTask<LongIntHashMap> {
+        private static final long serialVersionUID = 1L;
+
+        private List<List<String>> charLists;
+        private int from;
+        private int to;
+        private Lexicon lexicon;
+        private int wordMin;
+        private int wordMax;
+
+        FeatureCountTask(List<List<String>> charLists, int from, int to, Lexicon lexicon, int wordMin, int wordMax) {
+            this.charLists = charLists;
+            this.from = from;
+            this.to = to;
+            this.lexicon = lexicon;
+            this.wordMin = wordMin;
+            this.wordMax = wordMax;
+        }
+
+        @Override
+        protected LongIntHashMap compute() {
+            if (to - from <= shardSize) {
+                IntFeatureExtractor intFeatureExtractor = new IntFeatureExtractor(lexicon, null, wordMin, wordMax);
+                LongIntHashMap featureKeyCountMap = new LongIntHashMap();
+                long[] featureKeys = new long[intFeatureExtractor.maxNodeFeatures()];
+                for (int i = from; i < to; i++) {
+                    int length = intFeatureExtractor.setNormalizedSentence(charLists.get(i));
+                    for (int index = 0; index < length; index++) {
+                        int featureCount = intFeatureExtractor.getNodeFeatureKeys(index, featureKeys);
+                        for (int j = 0; j < featureCount; j++) {
+                            featureKeyCountMap.addTo(featureKeys[j], 1);
+                        }
+                    }
+                }
+                return featureKeyCountMap;
+            }
+            int middle = (from + to) >>> 1;
+            FeatureCountTask leftTask = new FeatureCountTask(charLists, from, middle, lexicon, wordMin, wordMax);
+            FeatureCountTask rightTask = new FeatureCountTask(charLists, middle, to, lexicon, wordMin, wordMax);
+            leftTask.fork();
+            LongIntHashMap right = rightTask.compute();
+            LongIntHashMap left = leftTask.join();
+            // 计数相加与顺序无关，把较小的表并入较大的表
+            LongIntHashMap larger = left.size() >= right.size() ? left : right;
+            LongIntHashMap smaller = larger == left ? right : left;
+            smaller.forEach(larger::addTo);
+            return larger;
+        }
+    }
+}
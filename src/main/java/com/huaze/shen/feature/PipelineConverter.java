@@ -0,0 +1,445 @@
+package com.huaze.shen.feature;
+
+import com.huaze.shen.metrics.Metrics;
+import com.huaze.shen.metrics.StageTimer;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author Huaze Shen
+ * @date 2026-10-18
+ *
+ * 流水线转换语料：一个读取线程读行并切词，按批放入有界队列；N个工作线程并行抽取特征字符串、
+ * 转换成特征下标和标签下标；一个写出线程按批次序号重新排序后写出。
+ * 一次完成convertTextFileToFeatureFile和convertFeatureFileToIndexFile，不再回读特征文件，
+ * 四个输出文件与串行路径逐字节相同。
+ *
+ * 输入可以是一个文件或一个目录，目录中的文件按文件名顺序依次读取，相当于把各文件逐行拼接后转换。
+ * 在途批次数受信号量限制，乱序到达的批次不会无限堆积。
+ */
+public class PipelineConverter {
+    public static final String STAGE_READ = "pipeline.read";
+    public static final String STAGE_FEATURIZE = "pipeline.featurize";
+    public static final String STAGE_WRITE = "pipeline.write";
+
+    private FeatureExtractor featureExtractor;
+    private int workers = Math.max(1, Runtime.getRuntime().availableProcessors() - 2);
+    private int batchSize = 64;
+    private int queueCapacity = 16;
+
+    public PipelineConverter(FeatureExtractor featureExtractor) {
+        this.featureExtractor = featureExtractor;
+    }
+
+    public void setWorkers(int workers) {
+        this.workers = workers;
+    }
+
+    /**
+     * 每批的句子数
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * 两个阶段之间队列的批次容量
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * 转换input(文件或目录)，输出与串行路径相同的字标签文件、特征文件、特征下标文件和标签下标文件
+     */
+    public Report convert(String input, String charTagFile, String featureFile, String featureIndexFile,
+                          String tagIndexFile) throws IOException {
+        List<File> shards = listShards(new File(input));
+        MonitoredQueue<Batch> sentenceQueue = new MonitoredQueue<>("sentences", queueCapacity);
+        MonitoredQueue<Batch> resultQueue = new MonitoredQueue<>("results", queueCapacity);
+        Semaphore inFlight = new Semaphore(2 * queueCapacity + workers);
+        Report report = new Report(shards.size(), sentenceQueue, resultQueue);
+        ExecutorService executorService = Executors.newFixedThreadPool(workers + 2);
+        CompletionService<Void> completionService = new ExecutorCompletionService<>(executorService);
+        long start = System.nanoTime();
+        try {
+            completionService.submit(() -> read(shards, sentenceQueue, inFlight, report));
+            for (int i = 0; i < workers; i++) {
+                completionService.submit(() -> featurize(sentenceQueue, resultQueue, report));
+            }
+            completionService.submit(() ->
+                    write(resultQueue, inFlight, charTagFile, featureFile, featureIndexFile, tagIndexFile, report));
+            // 按完成顺序检查，任何一个阶段失败都立即中断其余阶段，避免它们阻塞在队列上
+            for (int i = 0; i < workers + 2; i++) {
+                try {
+                    completionService.take().get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    }
+                    throw new IOException("pipeline stage failed", cause);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("pipeline interrupted");
+        } finally {
+            executorService.shutdownNow();
+        }
+        report.elapsedNanos = System.nanoTime() - start;
+        return report;
+    }
+
+    private static List<File> listShards(File input) throws IOException {
+        if (!input.isDirectory()) {
+            if (!input.isFile()) {
+                throw new FileNotFoundException(input.getPath());
+            }
+            return Arrays.asList(input);
+        }
+        File[] files = input.listFiles(File::isFile);
+        if (files == null) {
+            throw new IOException("cannot list " + input);
+        }
+        Arrays.sort(files);
+        return Arrays.asList(files);
+    }
+
+    private Void read(List<File> shards, MonitoredQueue<Batch> sentenceQueue, Semaphore inFlight, Report report)
+            throws IOException, InterruptedException {
+        StageTimer readTimer = Metrics.get().timer(STAGE_READ);
+        long sequence = 0;
+        Batch batch = new Batch(sequence++, batchSize);
+        for (File shard : shards) {
+            try (BufferedReader bufferedReader = new BufferedReader(new FileReader(shard))) {
+                long readStart = readTimer.start();
+                String line;
+                while ((line = bufferedReader.readLine()) != null) {
+                    String[] lineSplit = FeatureExtractor.splitLine(line);
+                    if (lineSplit == null) {
+                        continue;
+                    }
+                    batch.sentences.add(lineSplit);
+                    if (batch.sentences.size() == batchSize) {
+                        readTimer.stop(readStart, batch.sentences.size());
+                        report.sentences.addAndGet(batch.sentences.size());
+                        inFlight.acquire();
+                        sentenceQueue.put(batch);
+                        batch = new Batch(sequence++, batchSize);
+                        readStart = readTimer.start();
+                    }
+                }
+                readTimer.stop(readStart, batch.sentences.size());
+            }
+        }
+        if (!batch.sentences.isEmpty()) {
+            report.sentences.addAndGet(batch.sentences.size());
+            inFlight.acquire();
+            sentenceQueue.put(batch);
+        }
+        for (int i = 0; i < workers; i++) {
+            sentenceQueue.put(Batch.END);
+        }
+        return null;
+    }
+
+    private Void featurize(MonitoredQueue<Batch> sentenceQueue, MonitoredQueue<Batch> resultQueue, Report report)
+            throws InterruptedException {
+        StageTimer featurizeTimer = Metrics.get().timer(STAGE_FEATURIZE);
+        CharNormalizer charNormalizer = CharNormalizer.getDefault();
+        Map<String, Integer> featureIndexMap = featureExtractor.getFeatureIndexMap();
+        Map<String, Integer> tagIndexMap = featureExtractor.getTagIndexMap();
+        while (true) {
+            Batch batch = sentenceQueue.take();
+            if (batch == Batch.END) {
+                resultQueue.put(Batch.END);
+                return null;
+            }
+            long featurizeStart = featurizeTimer.start();
+            long nodeCount = 0;
+            StringBuilder charTags = batch.charTags;
+            StringBuilder features = batch.features;
+            StringBuilder featureIndexes = batch.featureIndexes;
+            StringBuilder tagIndexes = batch.tagIndexes;
+            for (String[] lineSplit : batch.sentences) {
+                List<String> charList = new ArrayList<>();
+                List<String> tagList = new ArrayList<>();
+                for (String word : lineSplit) {
+                    for (int i = 0; i < word.length(); i++) {
+                        char ch = word.charAt(i);
+                        String tag = TagScheme.name(TagScheme.tagOf(i, word.length()));
+                        charTags.append(ch).append(' ').append(tag).append('\n');
+                        charList.add(charNormalizer.normalizedChar(ch));
+                        tagList.add(tag);
+                    }
+                }
+                charTags.append('\n');
+                for (int i = 0; i < tagList.size(); i++) {
+                    String tag = tagList.get(i);
+                    List<String> nodeFeatures = featureExtractor.getNodeFeatures(i, charList);
+                    boolean first = true;
+                    for (String feature : nodeFeatures) {
+                        features.append(feature).append(' ');
+                        Integer index = featureIndexMap.get(feature);
+                        if (index != null) {
+                            if (!first) {
+                                featureIndexes.append(',');
+                            }
+                            featureIndexes.append(index.intValue());
+                            first = false;
+                        }
+                    }
+                    features.append(tag).append('\n');
+                    featureIndexes.append('\n');
+                    if (i > 0) {
+                        tagIndexes.append(',');
+                    }
+                    tagIndexes.append(tagIndexMap.get(tag));
+                }
+                features.append('\n');
+                featureIndexes.append('\n');
+                tagIndexes.append("\n\n");
+                nodeCount += tagList.size();
+            }
+            batch.sentences = null;
+            featurizeTimer.stop(featurizeStart, nodeCount);
+            report.nodes.addAndGet(nodeCount);
+            resultQueue.put(batch);
+        }
+    }
+
+    private Void write(MonitoredQueue<Batch> resultQueue, Semaphore inFlight, String charTagFile, String featureFile,
+                       String featureIndexFile, String tagIndexFile, Report report)
+            throws IOException, InterruptedException {
+        StageTimer writeTimer = Metrics.get().timer(STAGE_WRITE);
+        Map<Long, Batch> pending = new HashMap<>();
+        long nextSequence = 0;
+        int ended = 0;
+        try (BufferedWriter charTagFileWriter = new BufferedWriter(new FileWriter(charTagFile));
+             BufferedWriter featureFileWriter = new BufferedWriter(new FileWriter(featureFile));
+             BufferedWriter featureIndexFileWriter = new BufferedWriter(new FileWriter(featureIndexFile));
+             BufferedWriter tagIndexFileWriter = new BufferedWriter(new FileWriter(tagIndexFile))) {
+            featureIndexFileWriter.write(featureExtractor.getFeatureIndexMap().size() + "\n\n");
+            tagIndexFileWriter.write(featureExtractor.getTagIndexMap().size() + "\n\n");
+            while (ended < workers) {
+                Batch batch = resultQueue.take();
+                if (batch == Batch.END) {
+                    ended++;
+                    continue;
+                }
+                pending.put(batch.sequence, batch);
+                report.maxPendingBatches = Math.max(report.maxPendingBatches, pending.size());
+                while ((batch = pending.remove(nextSequence)) != null) {
+                    long writeStart = writeTimer.start();
+                    charTagFileWriter.append(batch.charTags);
+                    featureFileWriter.append(batch.features);
+                    featureIndexFileWriter.append(batch.featureIndexes);
+                    tagIndexFileWriter.append(batch.tagIndexes);
+                    writeTimer.stop(writeStart, batch.charTags.length());
+                    nextSequence++;
+                    inFlight.release();
+                }
+            }
+        }
+        if (!pending.isEmpty()) {
+            throw new IOException("missing batch " + nextSequence);
+        }
+        report.batches = nextSequence;
+        return null;
+    }
+
+    /**
+     * 一批句子以及工作线程为其生成的四个输出片段
+     */
+    private static class Batch {
+        static final Batch END = new Batch(-1, 0);
+
+        private long sequence;
+        private List<String[]> sentences;
+        private StringBuilder charTags = new StringBuilder();
+        private StringBuilder features = new StringBuilder();
+        private StringBuilder featureIndexes = new StringBuilder();
+        private StringBuilder tagIndexes = new StringBuilder();
+
+        Batch(long sequence, int batchSize) {
+            this.sequence = sequence;
+            this.sentences = new ArrayList<>(batchSize);
+        }
+    }
+
+    /**
+     * 带占用统计的有界队列：每次放入或取出后采样一次队列长度，并累计生产者被阻塞和消费者等待的时间。
+     * 队列经常是满的说明下游阶段是瓶颈，经常是空的说明上游阶段是瓶颈。
+     */
+    public static class MonitoredQueue<T> {
+        private String name;
+        private int capacity;
+        private BlockingQueue<T> queue;
+        private AtomicLong samples = new AtomicLong();
+        private AtomicLong occupancySum = new AtomicLong();
+        private AtomicLong maxOccupancy = new AtomicLong();
+        private AtomicLong putBlockedNanos = new AtomicLong();
+        private AtomicLong takeWaitNanos = new AtomicLong();
+
+        MonitoredQueue(String name, int capacity) {
+            this.name = name;
+            this.capacity = capacity;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        void put(T item) throws InterruptedException {
+            if (!queue.offer(item)) {
+                long blockStart = System.nanoTime();
+                queue.put(item);
+                putBlockedNanos.addAndGet(System.nanoTime() - blockStart);
+            }
+            sample();
+        }
+
+        T take() throws InterruptedException {
+            T item = queue.poll();
+            if (item == null) {
+                long waitStart = System.nanoTime();
+                item = queue.take();
+                takeWaitNanos.addAndGet(System.nanoTime() - waitStart);
+            }
+            sample();
+            return item;
+        }
+
+        private void sample() {
+            int size = queue.size();
+            samples.incrementAndGet();
+            occupancySum.addAndGet(size);
+            maxOccupancy.accumulateAndGet(size, Math::max);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getCapacity() {
+            return capacity;
+        }
+
+        public double getAverageOccupancy() {
+            long count = samples.get();
+            return count == 0 ? 0 : (double) occupancySum.get() / count;
+        }
+
+        public long getMaxOccupancy() {
+            return maxOccupancy.get();
+        }
+
+        /**
+         * 生产者因队列已满被阻塞的总时间
+         */
+        public long getPutBlockedNanos() {
+            return putBlockedNanos.get();
+        }
+
+        /**
+         * 消费者因队列为空而等待的总时间(多个消费者时为各自之和)
+         */
+        public long getTakeWaitNanos() {
+            return takeWaitNanos.get();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s queue: capacity %d, avg %.2f, max %d, producer blocked %d ms, "
+                            + "consumer waiting %d ms", name, capacity, getAverageOccupancy(), getMaxOccupancy(),
+                    putBlockedNanos.get() / 1000000, takeWaitNanos.get() / 1000000);
+        }
+    }
+
+    /**
+     * 一次转换的统计：句子数、节点数、批次数、乱序等待写出的最大批次数和两个队列的占用情况
+     */
+    public static class Report {
+        private int shards;
+        private AtomicLong sentences = new AtomicLong();
+        private AtomicLong nodes = new AtomicLong();
+        private long batches;
+        private int maxPendingBatches;
+        private long elapsedNanos;
+        private MonitoredQueue<Batch> sentenceQueue;
+        private MonitoredQueue<Batch> resultQueue;
+
+        Report(int shards, MonitoredQueue<Batch> sentenceQueue, MonitoredQueue<Batch> resultQueue) {
+            this.shards = shards;
+            this.sentenceQueue = sentenceQueue;
+            this.resultQueue = resultQueue;
+        }
+
+        public int getShards() {
+            return shards;
+        }
+
+        public long getSentences() {
+            return sentences.get();
+        }
+
+        public long getNodes() {
+            return nodes.get();
+        }
+
+        public long getBatches() {
+            return batches;
+        }
+
+        public int getMaxPendingBatches() {
+            return maxPendingBatches;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * 读取阶段到工作线程之间的队列
+         */
+        public MonitoredQueue<?> getSentenceQueue() {
+            return sentenceQueue;
+        }
+
+        /**
+         * 工作线程到写出阶段之间的队列
+         */
+        public MonitoredQueue<?> getResultQueue() {
+            return resultQueue;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("shards: %d, sentences: %d, nodes: %d, batches: %d, max pending: %d, "
+                            + "elapsed: %d ms%n%s%n%s", shards, getSentences(), getNodes(), batches,
+                    maxPendingBatches, elapsedNanos / 1000000, sentenceQueue, resultQueue);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        String resourcesDir = "src/main/resources/";
+        String trainFile = resourcesDir + "data/pku_test_gold.utf8";
+        String input = args.length > 0 ? args[0] : trainFile;
+        FeatureExtractor featureExtractor = new FeatureExtractor(trainFile);
+        PipelineConverter pipelineConverter = new PipelineConverter(featureExtractor);
+        if (args.length > 1) {
+            pipelineConverter.setWorkers(Integer.parseInt(args[1]));
+        }
+        Report report = pipelineConverter.convert(input,
+                resourcesDir + "data/pku_test_gold_char_tag.txt",
+                resourcesDir + "data/pku_test_gold_feature.txt",
+                resourcesDir + "data/pku_test_gold_feature_index.txt",
+                resourcesDir + "data/pku_test_gold_tag_index.txt");
+        System.out.println(report);
+    }
+}
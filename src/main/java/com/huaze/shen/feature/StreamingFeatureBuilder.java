@@ -0,0 +1,236 @@
+package com.huaze.shen.feature;
+
+import com.huaze.shen.dict.BigramIndex;
+import com.huaze.shen.dict.Lexicon;
+import com.huaze.shen.dict.Vocabulary;
+import com.huaze.shen.util.CountMinSketch;
+import com.huaze.shen.util.ExternalFeatureSorter;
+import com.huaze.shen.util.LongIntHashMap;
+
+import java.io.*;
+
+/**
+ * @author Huaze Shen
+ * @date 2026-10-18
+ *
+ * 流式构建特征：不把语料保存在内存中，逐行读取训练文件。
+ * 特征计数表达到内存上限时交给ExternalFeatureSorter按特征字符串排序溢写到临时文件，最后多路归并并累加计数，
+ * 去掉出现次数小于阈值的特征后按字符串顺序分配下标，结果与FeatureExtractor相同。
+ */
+public class StreamingFeatureBuilder {
+    /** 每个计数项估算占用的字节数：哈希表槽位加上溢写时格式化出的特征字符串 */
+    private static final int BYTES_PER_ENTRY = 128;
+
+    private String trainFile;
+    private String featureSaveDir;
+    private int minFeatureCount = 1;
+    private long memoryBudgetBytes = 256L << 20;
+    private boolean heavyHitterFilter;
+    private File tempDir = new File(System.getProperty("java.io.tmpdir"));
+    private int wordMax = 6;
+    private int wordMin = 2;
+    private Lexicon lexicon;
+    private int featureCount;
+    private int runCount;
+
+    public StreamingFeatureBuilder(String trainFile, String featureSaveDir) {
+        this.trainFile = trainFile;
+        this.featureSaveDir = featureSaveDir;
+    }
+
+    public void setMinFeatureCount(int minFeatureCount) {
+        this.minFeatureCount = minFeatureCount;
+    }
+
+    /**
+     * 特征统计阶段可以使用的内存字节数(不含词表)
+     */
+    public void setMemoryBudgetBytes(long memoryBudgetBytes) {
+        this.memoryBudgetBytes = memoryBudgetBytes;
+    }
+
+    /**
+     * 开启后先用Count-Min Sketch扫描一遍语料，估计次数小于阈值的特征不进入计数表。
+     * 估计值只会偏大，因此不会漏掉应保留的特征。只在minFeatureCount大于1时生效。
+     */
+    public void setHeavyHitterFilter(boolean heavyHitterFilter) {
+        this.heavyHitterFilter = heavyHitterFilter;
+    }
+
+    public void setTempDir(File tempDir) {
+        this.tempDir = tempDir;
+    }
+
+    public int getFeatureCount() {
+        return featureCount;
+    }
+
+    /**
+     * 溢写的临时文件个数
+     */
+    public int getRunCount() {
+        return runCount;
+    }
+
+    public Lexicon getLexicon() {
+        return lexicon;
+    }
+
+    public void build() throws IOException {
+        buildLexicon();
+        // 重建后特征重新编号，之前的增量不再适用
+        IncrementalFeatureUpdater.discardDeltas(featureSaveDir);
+        saveLexicon();
+        long countBudget = memoryBudgetBytes;
+        CountMinSketch sketch = null;
+        if (heavyHitterFilter && minFeatureCount > 1) {
+            sketch = new CountMinSketch(memoryBudgetBytes / 4);
+            countBudget -= sketch.estimateBytes();
+            sketchFeatures(sketch);
+        }
+        try (ExternalFeatureSorter externalFeatureSorter = new ExternalFeatureSorter(countBudget, tempDir)) {
+            countFeatures(sketch, (int) Math.max(1024, countBudget / BYTES_PER_ENTRY), externalFeatureSorter);
+            runCount = externalFeatureSorter.getRunCount();
+            saveFeatureIndex(externalFeatureSorter);
+        }
+        saveTagIndex();
+    }
+
+    private void buildLexicon() throws IOException {
+        Vocabulary vocabulary = new Vocabulary();
+        BigramIndex bigramIndex = new BigramIndex();
+        try (BufferedReader bufferedReader = new BufferedReader(new FileReader(trainFile))) {
+            String line;
+            while ((line = bufferedReader.readLine()) != null) {
+                String[] lineSplit = FeatureExtractor.splitLine(line);
+                if (lineSplit == null) {
+                    continue;
+                }
+                int prevWordId = -1;
+                for (String word : lineSplit) {
+                    int wordId = vocabulary.add(word);
+                    if (prevWordId >= 0) {
+                        bigramIndex.add(prevWordId, wordId);
+                    }
+                    prevWordId = wordId;
+                }
+            }
+        }
+        lexicon = new Lexicon(vocabulary, bigramIndex);
+    }
+
+    private void sketchFeatures(CountMinSketch sketch) throws IOException {
+        IntFeatureExtractor intFeatureExtractor = new IntFeatureExtractor(lexicon, null, wordMin, wordMax);
+        long[] featureKeys = new long[intFeatureExtractor.maxNodeFeatures()];
+        try (BufferedReader bufferedReader = new BufferedReader(new FileReader(trainFile))) {
+            String line;
+            while ((line = bufferedReader.readLine()) != null) {
+                int length = intFeatureExtractor.setSentence(line);
+                for (int index = 0; index < length; index++) {
+                    int count = intFeatureExtractor.getNodeFeatureKeys(index, featureKeys);
+                    for (int i = 0; i < count; i++) {
+                        sketch.add(featureKeys[i]);
+                    }
+                }
+            }
+        }
+    }
+
+    private void countFeatures(CountMinSketch sketch, int maxEntries, ExternalFeatureSorter externalFeatureSorter)
+            throws IOException {
+        IntFeatureExtractor intFeatureExtractor = new IntFeatureExtractor(lexicon, null, wordMin, wordMax);
+        long[] featureKeys = new long[intFeatureExtractor.maxNodeFeatures()];
+        LongIntHashMap featureKeyCountMap = new LongIntHashMap(maxEntries);
+        try (BufferedReader bufferedReader = new BufferedReader(new FileReader(trainFile))) {
+            String line;
+            while ((line = bufferedReader.readLine()) != null) {
+                int length = intFeatureExtractor.setSentence(line);
+                for (int index = 0; index < length; index++) {
+                    int count = intFeatureExtractor.getNodeFeatureKeys(index, featureKeys);
+                    for (int i = 0; i < count; i++) {
+                        if (sketch != null && sketch.estimate(featureKeys[i]) < minFeatureCount) {
+                            continue;
+                        }
+                        featureKeyCountMap.addTo(featureKeys[i], 1);
+                        if (featureKeyCountMap.size() >= maxEntries) {
+                            spill(featureKeyCountMap, externalFeatureSorter);
+                            featureKeyCountMap.clear();
+                        }
+                    }
+                }
+            }
+        }
+        if (featureKeyCountMap.size() > 0) {
+            spill(featureKeyCountMap, externalFeatureSorter);
+        }
+    }
+
+    /**
+     * 把计数表格式化成特征字符串交给排序器，排序后写入临时文件
+     */
+    private void spill(LongIntHashMap featureKeyCountMap, ExternalFeatureSorter externalFeatureSorter)
+            throws IOException {
+        Vocabulary vocabulary = lexicon.getVocabulary();
+        featureKeyCountMap.forEach((key, count) -> externalFeatureSorter.add(FeatureKey.format(key, vocabulary), count));
+        externalFeatureSorter.spill();
+    }
+
+    /**
+     * 归并各临时文件并累加计数，按字符串顺序为次数不小于阈值的特征分配下标
+     */
+    private void saveFeatureIndex(ExternalFeatureSorter externalFeatureSorter) throws IOException {
+        try (BufferedWriter bufferedWriter = new BufferedWriter(new FileWriter(featureSaveDir + "feature_index.txt"))) {
+            featureCount = 0;
+            externalFeatureSorter.forEachSorted((chars, offset, length, count) -> {
+                if (count >= minFeatureCount) {
+                    bufferedWriter.write(chars, offset, length);
+                    bufferedWriter.write("\t" + featureCount + "\n");
+                    featureCount++;
+                }
+            });
+        }
+    }
+
+    private void saveLexicon() throws IOException {
+        Vocabulary vocabulary = lexicon.getVocabulary();
+        try (BufferedWriter bufferedWriter = new BufferedWriter(new FileWriter(featureSaveDir + "unigram.txt"))) {
+            for (String word : vocabulary) {
+                bufferedWriter.write(word + "\n");
+            }
+        }
+        try (BufferedWriter bufferedWriter = new BufferedWriter(new FileWriter(featureSaveDir + "bigram.txt"))) {
+            for (long bigram : lexicon.getBigramIndex().toArray()) {
+                String left = vocabulary.word(BigramIndex.left(bigram));
+                String right = vocabulary.word(BigramIndex.right(bigram));
+                bufferedWriter.write(left + "*" + right + "\n");
+            }
+        }
+    }
+
+    private void saveTagIndex() throws IOException {
+        try (BufferedWriter bufferedWriter = new BufferedWriter(new FileWriter(featureSaveDir + "tag_index.txt"))) {
+            for (int i = 0; i < TagScheme.COUNT; i++) {
+                bufferedWriter.write(TagScheme.name(i) + "\t" + i + "\n");
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        String resourcesDir = "src/main/resources/";
+        String trainFile = resourcesDir + "data/pku_test_gold.utf8";
+        StreamingFeatureBuilder streamingFeatureBuilder =
+                new StreamingFeatureBuilder(trainFile, resourcesDir + "data/feature_save/");
+        if (args.length > 0) {
+            streamingFeatureBuilder.setMinFeatureCount(Integer.parseInt(args[0]));
+        }
+        if (args.length > 1) {
+            streamingFeatureBuilder.setMemoryBudgetBytes(Long.parseLong(args[1]));
+        }
+        if (args.length > 2) {
+            streamingFeatureBuilder.setHeavyHitterFilter(Boolean.parseBoolean(args[2]));
+        }
+        streamingFeatureBuilder.build();
+        System.out.println("features: " + streamingFeatureBuilder.getFeatureCount()
+                + ", runs: " + streamingFeatureBuilder.getRunCount());
+    }
+}
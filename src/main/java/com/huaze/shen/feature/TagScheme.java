@@ -0,0 +1,49 @@
+package com.huaze.shen.feature;
+
+/**
+ * @author Huaze Shen
+ * @date 2026-10-18
+ *
+ * 五标签方案，标签下标与tag_index.txt一致
+ */
+public final class TagScheme {
+    public static final int B = 0;
+    public static final int B_SINGLE = 1;
+    public static final int I = 2;
+    public static final int I_END = 3;
+    public static final int I_FIRST = 4;
+    public static final int COUNT = 5;
+
+    static final String[] NAMES = {"B", "B_single", "I", "I_end", "I_first"};
+
+    private TagScheme() {
+    }
+
+    public static String name(int tag) {
+        return NAMES[tag];
+    }
+
+    /**
+     * 长度为wordLength的词中第position个字的标签
+     */
+    public static int tagOf(int position, int wordLength) {
+        if (wordLength == 1) {
+            return B_SINGLE;
+        } else if (position == 0) {
+            return B;
+        } else if (position == wordLength - 1) {
+            return I_END;
+        } else if (position == 1) {
+            return I_FIRST;
+        } else {
+            return I;
+        }
+    }
+
+    /**
+     * 该标签是否表示一个词的开始
+     */
+    public static boolean isWordStart(int tag) {
+        return tag == B || tag == B_SINGLE;
+    }
+}
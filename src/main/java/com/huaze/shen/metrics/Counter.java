@@ -0,0 +1,25 @@
+package com.huaze.shen.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author Huaze Shen
+ * @date 2026-10-18
+ *
+ * 基于LongAdder的计数器，多线程并发累加时分散到不同的单元，不加锁
+ */
+public class Counter {
+    private final LongAdder adder = new LongAdder();
+
+    public void increment() {
+        adder.increment();
+    }
+
+    public void add(long value) {
+        adder.add(value);
+    }
+
+    public long sum() {
+        return adder.sum();
+    }
+}
@@ -0,0 +1,61 @@
+package com.huaze.shen.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * @author Huaze Shen
+ * @date 2026-10-18
+ *
+ * 默认注册表：指标保存在ConcurrentHashMap中，调用方应在初始化时取得计数器和计时器并持有引用，
+ * 热点路径上只做LongAdder累加
+ */
+public class DefaultMetricsRegistry implements MetricsRegistry {
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private final Map<String, StageTimer> timers = new ConcurrentHashMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    @Override
+    public Counter counter(String name) {
+        return counters.computeIfAbsent(name, key -> new Counter());
+    }
+
+    @Override
+    public StageTimer timer(String name) {
+        return timers.computeIfAbsent(name, key -> new StageTimer());
+    }
+
+    @Override
+    public void gauge(String name, LongSupplier supplier) {
+        gauges.put(name, supplier);
+    }
+
+    @Override
+    public void removeGauge(String name) {
+        gauges.remove(name);
+    }
+
+    @Override
+    public boolean removeGauge(String name, LongSupplier supplier) {
+        return gauges.remove(name, supplier);
+    }
+
+    @Override
+    public MetricsSnapshot snapshot() {
+        Map<String, Long> counterValues = new TreeMap<>();
+        for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+            counterValues.put(entry.getKey(), entry.getValue().sum());
+        }
+        Map<String, MetricsSnapshot.Stage> stageValues = new TreeMap<>();
+        for (Map.Entry<String, StageTimer> entry : timers.entrySet()) {
+            stageValues.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        Map<String, Long> gaugeValues = new TreeMap<>();
+        for (Map.Entry<String, LongSupplier> entry : gauges.entrySet()) {
+            gaugeValues.put(entry.getKey(), entry.getValue().getAsLong());
+        }
+        return new MetricsSnapshot(counterValues, stageValues, gaugeValues);
+    }
+}
@@ -0,0 +1,89 @@
+package com.huaze.shen.metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * @author Huaze Shen
+ * @date 2026-10-18
+ *
+ * 全局指标入口：FeatureExtractor、IntFeatureExtractor和CrfSegmenter在创建时从这里取得计数器，
+ * 因此替换注册表要在创建它们之前进行。registerMBean把当前注册表以MXBean形式发布到平台MBeanServer。
+ */
+public class Metrics {
+    public static final String OBJECT_NAME = "com.huaze.shen:type=Metrics";
+
+    private static volatile MetricsRegistry registry = new DefaultMetricsRegistry();
+
+    public static MetricsRegistry get() {
+        return registry;
+    }
+
+    public static void setRegistry(MetricsRegistry metricsRegistry) {
+        registry = metricsRegistry;
+    }
+
+    public static MetricsSnapshot snapshot() {
+        return registry.snapshot();
+    }
+
+    /**
+     * 以OBJECT_NAME注册MXBean，已注册时先注销旧的
+     */
+    public static void registerMBean() throws JMException {
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = new ObjectName(OBJECT_NAME);
+        if (mBeanServer.isRegistered(objectName)) {
+            mBeanServer.unregisterMBean(objectName);
+        }
+        mBeanServer.registerMBean(new MBean(), objectName);
+    }
+
+    private static class MBean implements MetricsMXBean {
+        @Override
+        public Map<String, Long> getCounters() {
+            return snapshot().getCounters();
+        }
+
+        @Override
+        public Map<String, Long> getGauges() {
+            return snapshot().getGauges();
+        }
+
+        @Override
+        public Map<String, Long> getStageNanos() {
+            Map<String, Long> stageNanos = new TreeMap<>();
+            for (Map.Entry<String, MetricsSnapshot.Stage> entry : snapshot().getStages().entrySet()) {
+                stageNanos.put(entry.getKey(), entry.getValue().getNanos());
+            }
+            return stageNanos;
+        }
+
+        @Override
+        public Map<String, Long> getStageItems() {
+            Map<String, Long> stageItems = new TreeMap<>();
+            for (Map.Entry<String, MetricsSnapshot.Stage> entry : snapshot().getStages().entrySet()) {
+                stageItems.put(entry.getKey(), entry.getValue().getItems());
+            }
+            return stageItems;
+        }
+
+        @Override
+        public Map<String, Double> getStageThroughput() {
+            Map<String, Double> stageThroughput = new TreeMap<>();
+            for (Map.Entry<String, MetricsSnapshot.Stage> entry : snapshot().getStages().entrySet()) {
+                stageThroughput.put(entry.getKey(), entry.getValue().getThroughput());
+            }
+            return stageThroughput;
+        }
+
+        @Override
+        public String getReport() {
+            return snapshot().toString();
+        }
+    }
+}
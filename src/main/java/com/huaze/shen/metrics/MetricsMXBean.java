@@ -0,0 +1,23 @@
+package com.huaze.shen.metrics;
+
+import java.util.Map;
+
+/**
+ * @author Huaze Shen
+ * @date 2026-10-18
+ *
+ * 通过JMX读取的指标视图，每次读取属性时从注册表取一次快照
+ */
+public interface MetricsMXBean {
+    Map<String, Long> getCounters();
+
+    Map<String, Long> getGauges();
+
+    Map<String, Long> getStageNanos();
+
+    Map<String, Long> getStageItems();
+
+    Map<String, Double> getStageThroughput();
+
+    String getReport();
+}
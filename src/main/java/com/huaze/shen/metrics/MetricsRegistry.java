@@ -0,0 +1,34 @@
+package com.huaze.shen.metrics;
+
+import java.util.function.LongSupplier;
+
+/**
+ * @author Huaze Shen
+ * @date 2026-10-18
+ *
+ * 指标注册表：按名字取得计数器和阶段计时器，同名返回同一实例；
+ * 仪表在取快照时才调用，适合表大小、内存占用这类按需计算的值。
+ * 默认实现见DefaultMetricsRegistry，可以通过Metrics.setRegistry替换。
+ */
+public interface MetricsRegistry {
+    Counter counter(String name);
+
+    StageTimer timer(String name);
+
+    /**
+     * 注册仪表，同名的旧仪表被替换
+     */
+    void gauge(String name, LongSupplier supplier);
+
+    /**
+     * 移除仪表。注册表全局存在，仪表引用的对象在移除前不会被回收，持有者不再使用时应当移除
+     */
+    void removeGauge(String name);
+
+    /**
+     * 只有当前注册的仍是supplier时才移除，避免删掉之后其他持有者注册的同名仪表
+     */
+    boolean removeGauge(String name, LongSupplier supplier);
+
+    MetricsSnapshot snapshot();
+}
@@ -0,0 +1,109 @@
+package com.huaze.shen.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * @author Huaze Shen
+ * @date 2026-10-18
+ *
+ * 某一时刻所有指标的只读快照
+ */
+public class MetricsSnapshot {
+    private Map<String, Long> counters;
+    private Map<String, Stage> stages;
+    private Map<String, Long> gauges;
+
+    public MetricsSnapshot(Map<String, Long> counters, Map<String, Stage> stages, Map<String, Long> gauges) {
+        this.counters = Collections.unmodifiableMap(counters);
+        this.stages = Collections.unmodifiableMap(stages);
+        this.gauges = Collections.unmodifiableMap(gauges);
+    }
+
+    public Map<String, Long> getCounters() {
+        return counters;
+    }
+
+    public Map<String, Stage> getStages() {
+        return stages;
+    }
+
+    public Map<String, Long> getGauges() {
+        return gauges;
+    }
+
+    public long counter(String name) {
+        Long value = counters.get(name);
+        return value == null ? 0 : value;
+    }
+
+    public long gauge(String name) {
+        Long value = gauges.get(name);
+        return value == null ? 0 : value;
+    }
+
+    public Stage stage(String name) {
+        Stage stage = stages.get(name);
+        return stage == null ? new Stage(0, 0, 0) : stage;
+    }
+
+    /**
+     * 两个计数器的比值，如词典命中率，分母为0时返回0
+     */
+    public double ratio(String numerator, String denominator) {
+        long total = counter(denominator);
+        return total == 0 ? 0 : (double) counter(numerator) / total;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder stringBuilder = new StringBuilder();
+        for (Map.Entry<String, Stage> entry : stages.entrySet()) {
+            stringBuilder.append(entry.getKey()).append(": ").append(entry.getValue()).append("\n");
+        }
+        for (Map.Entry<String, Long> entry : counters.entrySet()) {
+            stringBuilder.append(entry.getKey()).append(": ").append(entry.getValue()).append("\n");
+        }
+        for (Map.Entry<String, Long> entry : gauges.entrySet()) {
+            stringBuilder.append(entry.getKey()).append(": ").append(entry.getValue()).append("\n");
+        }
+        return stringBuilder.toString();
+    }
+
+    public static class Stage {
+        private long calls;
+        private long nanos;
+        private long items;
+
+        public Stage(long calls, long nanos, long items) {
+            this.calls = calls;
+            this.nanos = nanos;
+            this.items = items;
+        }
+
+        public long getCalls() {
+            return calls;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        public long getItems() {
+            return items;
+        }
+
+        /**
+         * 每秒处理的条目数
+         */
+        public double getThroughput() {
+            return nanos == 0 ? 0 : items * 1e9 / nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d calls, %.1f ms, %d items, %.0f items/s",
+                    calls, nanos / 1e6, items, getThroughput());
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.huaze.shen.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author Huaze Shen
+ * @date 2026-10-18
+ *
+ * 阶段计时器：累计调用次数、耗时和处理的条目数(如字数、句子数)，由此得到吞吐量。
+ * 用法：long start = timer.start(); ... timer.stop(start, items);
+ */
+public class StageTimer {
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+    private final LongAdder items = new LongAdder();
+
+    public long start() {
+        return System.nanoTime();
+    }
+
+    public void stop(long start, long itemCount) {
+        nanos.add(System.nanoTime() - start);
+        items.add(itemCount);
+        calls.increment();
+    }
+
+    public MetricsSnapshot.Stage snapshot() {
+        return new MetricsSnapshot.Stage(calls.sum(), nanos.sum(), items.sum());
+    }
+}
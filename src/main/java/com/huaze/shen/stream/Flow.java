@@ -0,0 +1,36 @@
+package com.huaze.shen.stream;
+
+/**
+ * @author Huaze Shen
+ * @date 2026-10-18
+ *
+ * 与java.util.concurrent.Flow(Java 9)签名相同的发布订阅接口。项目以Java 8为目标，
+ * 不能直接使用JDK中的Flow；在Java 9以上只需一个转发各方法的简单适配器即可接到JDK的接口。
+ */
+public final class Flow {
+    private Flow() {
+    }
+
+    public interface Publisher<T> {
+        void subscribe(Subscriber<? super T> subscriber);
+    }
+
+    public interface Subscriber<T> {
+        void onSubscribe(Subscription subscription);
+
+        void onNext(T item);
+
+        void onError(Throwable throwable);
+
+        void onComplete();
+    }
+
+    public interface Subscription {
+        /**
+         * 增加n个需求，n不是正数时发布者以IllegalArgumentException结束订阅
+         */
+        void request(long n);
+
+        void cancel();
+    }
+}
@@ -0,0 +1,103 @@
+package com.huaze.shen.stream;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * @author Huaze Shen
+ * @date 2026-10-18
+ *
+ * 按行读取字符流，行内容留在可复用的缓冲区中，不为每行创建字符串。
+ * 行结束符为"\n"、"\r\n"或"\r"，缓冲区只会增长到最长一行的长度。
+ */
+class LineReader implements Closeable {
+    private Reader reader;
+    private char[] buffer = new char[8192];
+    private int position;
+    private int limit;
+    private boolean skipLineFeed;
+    private boolean eof;
+    private int lineStart;
+    private int lineLength;
+
+    LineReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * 读取下一行，之后通过chars、offset、length访问，直到下次调用前有效。输入结束返回false。
+     */
+    boolean readLine() throws IOException {
+        int scan = position;
+        while (true) {
+            if (skipLineFeed && scan < limit) {
+                skipLineFeed = false;
+                if (buffer[scan] == '\n') {
+                    position++;
+                    scan++;
+                }
+            }
+            while (scan < limit) {
+                char ch = buffer[scan];
+                if (ch == '\n' || ch == '\r') {
+                    lineStart = position;
+                    lineLength = scan - position;
+                    position = scan + 1;
+                    skipLineFeed = ch == '\r';
+                    return true;
+                }
+                scan++;
+            }
+            if (eof) {
+                if (position == limit) {
+                    return false;
+                }
+                lineStart = position;
+                lineLength = limit - position;
+                position = limit;
+                return true;
+            }
+            scan -= position;
+            fill();
+        }
+    }
+
+    char[] chars() {
+        return buffer;
+    }
+
+    int offset() {
+        return lineStart;
+    }
+
+    int length() {
+        return lineLength;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * 把未读完的部分移到缓冲区开头，缓冲区已满时扩容，再读入更多字符
+     */
+    private void fill() throws IOException {
+        int remaining = limit - position;
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, remaining);
+        } else if (remaining == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        position = 0;
+        limit = remaining;
+        int read = reader.read(buffer, limit, buffer.length - limit);
+        if (read < 0) {
+            eof = true;
+        } else {
+            limit += read;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.huaze.shen.stream;
+
+import com.huaze.shen.crf.CrfSegmenter;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executor;
+
+/**
+ * @author Huaze Shen
+ * @date 2026-10-18
+ *
+ * 流式分词的入口：输入为Reader、UTF-8编码的InputStream或ReadableByteChannel，
+ * 每行作为一个句子，输出句子迭代器、词迭代器或按需求发布的Publisher。
+ * 输入不会被整体读入内存，适合大文件、日志流和网络连接。
+ */
+public class SegmentStreams {
+    private SegmentStreams() {
+    }
+
+    public static SentenceIterator sentences(CrfSegmenter crfSegmenter, Reader reader) {
+        return new SentenceIterator(crfSegmenter, reader);
+    }
+
+    public static SentenceIterator sentences(CrfSegmenter crfSegmenter, InputStream inputStream) {
+        return sentences(crfSegmenter, new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+    }
+
+    public static SentenceIterator sentences(CrfSegmenter crfSegmenter, ReadableByteChannel channel) {
+        return sentences(crfSegmenter, Channels.newReader(channel, StandardCharsets.UTF_8.name()));
+    }
+
+    public static TokenIterator tokens(CrfSegmenter crfSegmenter, Reader reader) {
+        return new TokenIterator(sentences(crfSegmenter, reader));
+    }
+
+    public static TokenIterator tokens(CrfSegmenter crfSegmenter, InputStream inputStream) {
+        return new TokenIterator(sentences(crfSegmenter, inputStream));
+    }
+
+    public static TokenIterator tokens(CrfSegmenter crfSegmenter, ReadableByteChannel channel) {
+        return new TokenIterator(sentences(crfSegmenter, channel));
+    }
+
+    public static SentencePublisher publisher(CrfSegmenter crfSegmenter, Reader reader, Executor executor) {
+        return new SentencePublisher(crfSegmenter, reader, executor);
+    }
+
+    public static SentencePublisher publisher(CrfSegmenter crfSegmenter, InputStream inputStream,
+                                              Executor executor) {
+        return publisher(crfSegmenter, new InputStreamReader(inputStream, StandardCharsets.UTF_8), executor);
+    }
+
+    public static SentencePublisher publisher(CrfSegmenter crfSegmenter, ReadableByteChannel channel,
+                                              Executor executor) {
+        return publisher(crfSegmenter, Channels.newReader(channel, StandardCharsets.UTF_8.name()), executor);
+    }
+}
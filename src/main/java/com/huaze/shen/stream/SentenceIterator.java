@@ -0,0 +1,97 @@
+package com.huaze.shen.stream;
+
+import com.huaze.shen.crf.CrfSegmenter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.CharBuffer;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * @author Huaze Shen
+ * @date 2026-10-18
+ *
+ * 逐行读取字符流并分词，每次next返回一行的分词结果，空行被跳过。
+ * 只预读一行，内存占用取决于最长的一行而不是输入大小。读取出错时抛出UncheckedIOException。
+ * 非线程安全。
+ */
+public class SentenceIterator implements Iterator<List<String>>, Closeable {
+    private CrfSegmenter crfSegmenter;
+    private LineReader lineReader;
+    private List<String> next;
+    private boolean finished;
+
+    public SentenceIterator(CrfSegmenter crfSegmenter, Reader reader) {
+        this.crfSegmenter = crfSegmenter;
+        this.lineReader = new LineReader(reader);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next != null) {
+            return true;
+        }
+        if (finished) {
+            return false;
+        }
+        try {
+            while (lineReader.readLine()) {
+                List<String> words = crfSegmenter.segment(
+                        CharBuffer.wrap(lineReader.chars(), lineReader.offset(), lineReader.length()));
+                if (!words.isEmpty()) {
+                    next = words;
+                    return true;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        finished = true;
+        return false;
+    }
+
+    @Override
+    public List<String> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        List<String> words = next;
+        next = null;
+        return words;
+    }
+
+    /**
+     * 有序、元素非空、大小未知的Spliterator，不支持拆分并行
+     */
+    public Spliterator<List<String>> spliterator() {
+        return Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL);
+    }
+
+    /**
+     * 顺序流，关闭流时关闭输入
+     */
+    public Stream<List<String>> stream() {
+        return StreamSupport.stream(spliterator(), false).onClose(() -> {
+            try {
+                close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    @Override
+    public void close() throws IOException {
+        finished = true;
+        next = null;
+        lineReader.close();
+    }
+}
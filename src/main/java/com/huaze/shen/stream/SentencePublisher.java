@@ -0,0 +1,140 @@
+package com.huaze.shen.stream;
+
+import com.huaze.shen.crf.CrfSegmenter;
+
+import java.io.Reader;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author Huaze Shen
+ * @date 2026-10-18
+ *
+ * 按需求发布分词结果：只在订阅者请求时才从输入读取并分词，未满足的需求为0时停止读取，
+ * 慢订阅者不会让结果在内存中堆积。输入只能读一遍，因此只接受一个订阅者。
+ *
+ * 发送在executor上进行，默认在调用request的线程上直接发送；在onNext中再次request不会递归，
+ * 而是由当前的发送循环继续处理。完成、出错或取消后关闭输入。
+ */
+public class SentencePublisher implements Flow.Publisher<List<String>> {
+    private SentenceIterator sentenceIterator;
+    private Executor executor;
+    private AtomicBoolean subscribed = new AtomicBoolean();
+
+    public SentencePublisher(CrfSegmenter crfSegmenter, Reader reader) {
+        this(crfSegmenter, reader, Runnable::run);
+    }
+
+    public SentencePublisher(CrfSegmenter crfSegmenter, Reader reader, Executor executor) {
+        this.sentenceIterator = new SentenceIterator(crfSegmenter, reader);
+        this.executor = executor;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super List<String>> subscriber) {
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("SentencePublisher allows only one subscriber"));
+            return;
+        }
+        SentenceSubscription subscription = new SentenceSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+    }
+
+    private class SentenceSubscription implements Flow.Subscription {
+        private Flow.Subscriber<? super List<String>> subscriber;
+        private AtomicLong demand = new AtomicLong();
+        // 发送循环的待处理信号数，不为0时已有线程在发送
+        private AtomicInteger pending = new AtomicInteger();
+        private volatile boolean cancelled;
+        private volatile Throwable requestError;
+        private boolean done;
+
+        SentenceSubscription(Flow.Subscriber<? super List<String>> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                requestError = new IllegalArgumentException("non-positive request: " + n);
+            } else {
+                long current;
+                long updated;
+                do {
+                    current = demand.get();
+                    updated = current + n < 0 ? Long.MAX_VALUE : current + n;
+                } while (!demand.compareAndSet(current, updated));
+            }
+            signal();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            signal();
+        }
+
+        private void signal() {
+            if (pending.getAndIncrement() == 0) {
+                executor.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            int missed = 1;
+            do {
+                if (!done) {
+                    emit();
+                }
+                missed = pending.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void emit() {
+            try {
+                while (!cancelled && requestError == null && demand.get() > 0) {
+                    if (!sentenceIterator.hasNext()) {
+                        finish();
+                        subscriber.onComplete();
+                        return;
+                    }
+                    List<String> words = sentenceIterator.next();
+                    if (demand.get() != Long.MAX_VALUE) {
+                        demand.decrementAndGet();
+                    }
+                    subscriber.onNext(words);
+                }
+                if (cancelled) {
+                    finish();
+                } else if (requestError != null) {
+                    finish();
+                    subscriber.onError(requestError);
+                }
+            } catch (RuntimeException e) {
+                finish();
+                subscriber.onError(e);
+            }
+        }
+
+        private void finish() {
+            done = true;
+            try {
+                sentenceIterator.close();
+            } catch (Exception e) {
+                // 输入已经读完或放弃，关闭失败不影响结果
+            }
+        }
+    }
+}
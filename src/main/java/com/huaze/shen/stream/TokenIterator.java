@@ -0,0 +1,71 @@
+package com.huaze.shen.stream;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * @author Huaze Shen
+ * @date 2026-10-18
+ *
+ * 把SentenceIterator展开成逐个词的迭代器，句子边界不再保留。非线程安全。
+ */
+public class TokenIterator implements Iterator<String>, Closeable {
+    private SentenceIterator sentenceIterator;
+    private Iterator<String> words = Collections.emptyIterator();
+
+    public TokenIterator(SentenceIterator sentenceIterator) {
+        this.sentenceIterator = sentenceIterator;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!words.hasNext()) {
+            if (!sentenceIterator.hasNext()) {
+                return false;
+            }
+            List<String> sentence = sentenceIterator.next();
+            words = sentence.iterator();
+        }
+        return true;
+    }
+
+    @Override
+    public String next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return words.next();
+    }
+
+    public Spliterator<String> spliterator() {
+        return Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL);
+    }
+
+    /**
+     * 顺序流，关闭流时关闭输入
+     */
+    public Stream<String> stream() {
+        return StreamSupport.stream(spliterator(), false).onClose(() -> {
+            try {
+                close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    @Override
+    public void close() throws IOException {
+        words = Collections.emptyIterator();
+        sentenceIterator.close();
+    }
+}
@@ -0,0 +1,62 @@
+package com.huaze.shen.util;
+
+/**
+ * @author Huaze Shen
+ * @date 2026-10-18
+ *
+ * Count-Min Sketch：固定内存内近似统计long键的频次，估计值只会偏大不会偏小。
+ * 采用保守更新，只增加各行中最小的计数器，减小高估。
+ */
+public class CountMinSketch {
+    private static final long[] SEEDS = {
+            0x9e3779b97f4a7c15L, 0xc2b2ae3d27d4eb4fL, 0x165667b19e3779f9L, 0xd6e8feb86659fd93L
+    };
+
+    private int[] counters;
+    private int depth;
+    private int width;
+    private int mask;
+
+    /**
+     * 按字节数分配计数器，每行宽度取不超过预算的2的幂
+     */
+    public CountMinSketch(long budgetBytes) {
+        depth = SEEDS.length;
+        long perRow = Math.max(64, budgetBytes / Integer.BYTES / depth);
+        width = Integer.highestOneBit((int) Math.min(perRow, 1 << 28));
+        mask = width - 1;
+        counters = new int[depth * width];
+    }
+
+    public void add(long key) {
+        int estimate = estimate(key);
+        for (int row = 0; row < depth; row++) {
+            int slot = row * width + index(key, row);
+            if (counters[slot] == estimate && estimate < Integer.MAX_VALUE) {
+                counters[slot]++;
+            }
+        }
+    }
+
+    public int estimate(long key) {
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters[row * width + index(key, row)]);
+        }
+        return estimate;
+    }
+
+    public long estimateBytes() {
+        return (long) counters.length * Integer.BYTES;
+    }
+
+    private int index(long key, int row) {
+        long hash = key ^ SEEDS[row];
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return (int) hash & mask;
+    }
+}
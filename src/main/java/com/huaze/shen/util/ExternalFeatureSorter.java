@@ -0,0 +1,336 @@
+package com.huaze.shen.util;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * @author Huaze Shen
+ * @date 2026-10-18
+ *
+ * 按特征字符串排序(特征, 次数)对，顺序与String.compareTo相同，即按UTF-16码元逐个比较，前缀在前。
+ * 特征依次拷贝进一个char[]池，每项只记录起始位置、长度和次数三个int，不为每项创建对象。
+ * 内存中的数据用MSD基数排序(每个码元拆成高低两个字节，共257个桶，0号桶表示字符串已结束)，
+ * 超过内存预算时排序后溢写成临时文件，最后多路归并，相同特征的次数相加。非线程安全。
+ */
+public class ExternalFeatureSorter implements Closeable {
+    /** 每项的固定开销：起始位置、长度、次数、排序下标和辅助数组 */
+    private static final int BYTES_PER_ENTRY = 5 * Integer.BYTES;
+    private static final int INSERTION_SORT_THRESHOLD = 32;
+    private static final int RADIX = 257;
+
+    private long memoryBudgetBytes;
+    private File tempDir;
+    private char[] pool = new char[1 << 12];
+    private int poolSize;
+    private int[] starts = new int[1 << 10];
+    private int[] lengths = new int[1 << 10];
+    private int[] counts = new int[1 << 10];
+    private int size;
+    private int[] order;
+    private List<File> runs = new ArrayList<>();
+
+    public ExternalFeatureSorter(long memoryBudgetBytes, File tempDir) {
+        this.memoryBudgetBytes = memoryBudgetBytes;
+        this.tempDir = tempDir;
+    }
+
+    /**
+     * 加入一个特征及其次数，内存超出预算时自动溢写
+     */
+    public void add(CharSequence feature, int count) {
+        int length = feature.length();
+        if (size > 0 && (long) (poolSize + length) * Character.BYTES + (long) (size + 1) * BYTES_PER_ENTRY
+                > memoryBudgetBytes) {
+            try {
+                spill();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        if (poolSize + length > pool.length) {
+            pool = Arrays.copyOf(pool, Math.max(poolSize + length, pool.length * 2));
+        }
+        for (int i = 0; i < length; i++) {
+            pool[poolSize + i] = feature.charAt(i);
+        }
+        if (size == starts.length) {
+            starts = Arrays.copyOf(starts, size * 2);
+            lengths = Arrays.copyOf(lengths, size * 2);
+            counts = Arrays.copyOf(counts, size * 2);
+        }
+        starts[size] = poolSize;
+        lengths[size] = length;
+        counts[size] = count;
+        size++;
+        poolSize += length;
+        order = null;
+    }
+
+    /**
+     * 把内存中的数据排序后写成一个临时文件
+     */
+    public void spill() throws IOException {
+        if (size == 0) {
+            return;
+        }
+        sort();
+        File run = File.createTempFile("feature_run_", ".bin", tempDir);
+        runs.add(run);
+        try (DataOutputStream dataOutputStream = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(run), 1 << 16))) {
+            byte[] bytes = new byte[64];
+            for (int i = 0; i < size; i++) {
+                int entry = order[i];
+                int length = lengths[entry];
+                if (bytes.length < length * 2) {
+                    bytes = new byte[length * 2];
+                }
+                for (int j = 0; j < length; j++) {
+                    char ch = pool[starts[entry] + j];
+                    bytes[2 * j] = (byte) (ch >>> 8);
+                    bytes[2 * j + 1] = (byte) ch;
+                }
+                dataOutputStream.writeInt(length);
+                dataOutputStream.writeInt(counts[entry]);
+                dataOutputStream.write(bytes, 0, length * 2);
+            }
+        }
+        poolSize = 0;
+        size = 0;
+        order = null;
+    }
+
+    /**
+     * 排序内存中的数据；已经溢写过时把剩余数据也写成临时文件，留待归并
+     */
+    public void finish() throws IOException {
+        if (runs.isEmpty()) {
+            sort();
+        } else {
+            spill();
+        }
+    }
+
+    /**
+     * 按特征顺序访问全部数据，相同特征只访问一次，次数为各处之和
+     */
+    public void forEachSorted(Visitor visitor) throws IOException {
+        finish();
+        if (runs.isEmpty()) {
+            int i = 0;
+            while (i < size) {
+                int entry = order[i];
+                long count = counts[entry];
+                int j = i + 1;
+                while (j < size && compare(entry, order[j]) == 0) {
+                    count += counts[order[j]];
+                    j++;
+                }
+                visitor.visit(pool, starts[entry], lengths[entry], count);
+                i = j;
+            }
+            return;
+        }
+        mergeRuns(visitor);
+    }
+
+    /**
+     * 溢写的临时文件个数
+     */
+    public int getRunCount() {
+        return runs.size();
+    }
+
+    /**
+     * 删除临时文件
+     */
+    @Override
+    public void close() {
+        for (File run : runs) {
+            run.delete();
+        }
+        runs.clear();
+    }
+
+    public interface Visitor {
+        /**
+         * 特征为chars[offset, offset + length)，数组在回调返回后会被复用
+         */
+        void visit(char[] chars, int offset, int length, long count) throws IOException;
+    }
+
+    private void mergeRuns(Visitor visitor) throws IOException {
+        PriorityQueue<RunReader> queue = new PriorityQueue<>(runs.size());
+        try {
+            for (File run : runs) {
+                RunReader runReader = new RunReader(run);
+                if (runReader.advance()) {
+                    queue.add(runReader);
+                } else {
+                    runReader.close();
+                }
+            }
+            char[] current = new char[64];
+            while (!queue.isEmpty()) {
+                RunReader head = queue.peek();
+                int length = head.length;
+                if (current.length < length) {
+                    current = new char[Math.max(length, current.length * 2)];
+                }
+                System.arraycopy(head.chars, 0, current, 0, length);
+                long count = 0;
+                while (!queue.isEmpty() && compare(queue.peek().chars, queue.peek().length, current, length) == 0) {
+                    RunReader runReader = queue.poll();
+                    count += runReader.count;
+                    if (runReader.advance()) {
+                        queue.add(runReader);
+                    } else {
+                        runReader.close();
+                    }
+                }
+                visitor.visit(current, 0, length, count);
+            }
+        } finally {
+            for (RunReader runReader : queue) {
+                runReader.close();
+            }
+        }
+    }
+
+    private void sort() {
+        if (order != null) {
+            return;
+        }
+        order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        radixSort(order, new int[size], 0, size, 0);
+    }
+
+    /**
+     * 对order[from, to)按第digit个字节做MSD基数排序，偶数位为码元高字节，奇数位为低字节
+     */
+    private void radixSort(int[] order, int[] aux, int from, int to, int digit) {
+        if (to - from <= INSERTION_SORT_THRESHOLD) {
+            insertionSort(order, from, to, digit >> 1);
+            return;
+        }
+        int[] bucketStarts = new int[RADIX + 1];
+        for (int i = from; i < to; i++) {
+            bucketStarts[digitOf(order[i], digit) + 1]++;
+        }
+        for (int bucket = 0; bucket < RADIX; bucket++) {
+            bucketStarts[bucket + 1] += bucketStarts[bucket];
+        }
+        int[] fill = Arrays.copyOf(bucketStarts, RADIX);
+        for (int i = from; i < to; i++) {
+            int entry = order[i];
+            aux[fill[digitOf(entry, digit)]++] = entry;
+        }
+        System.arraycopy(aux, 0, order, from, to - from);
+        // 0号桶中的字符串已经结束，彼此相等，不再继续
+        for (int bucket = 1; bucket < RADIX; bucket++) {
+            int bucketFrom = from + bucketStarts[bucket];
+            int bucketTo = from + bucketStarts[bucket + 1];
+            if (bucketTo - bucketFrom > 1) {
+                radixSort(order, aux, bucketFrom, bucketTo, digit + 1);
+            }
+        }
+    }
+
+    private int digitOf(int entry, int digit) {
+        int charIndex = digit >> 1;
+        if (charIndex >= lengths[entry]) {
+            return 0;
+        }
+        char ch = pool[starts[entry] + charIndex];
+        return ((digit & 1) == 0 ? ch >>> 8 : ch & 0xff) + 1;
+    }
+
+    /**
+     * 前depth个码元已经相同，从depth开始比较
+     */
+    private void insertionSort(int[] order, int from, int to, int depth) {
+        for (int i = from + 1; i < to; i++) {
+            int entry = order[i];
+            int j = i - 1;
+            while (j >= from && compare(order[j], entry, depth) > 0) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = entry;
+        }
+    }
+
+    private int compare(int left, int right) {
+        return compare(left, right, 0);
+    }
+
+    private int compare(int left, int right, int depth) {
+        int leftLength = lengths[left];
+        int rightLength = lengths[right];
+        int limit = Math.min(leftLength, rightLength);
+        for (int i = depth; i < limit; i++) {
+            char leftChar = pool[starts[left] + i];
+            char rightChar = pool[starts[right] + i];
+            if (leftChar != rightChar) {
+                return leftChar - rightChar;
+            }
+        }
+        return leftLength - rightLength;
+    }
+
+    private static int compare(char[] left, int leftLength, char[] right, int rightLength) {
+        int limit = Math.min(leftLength, rightLength);
+        for (int i = 0; i < limit; i++) {
+            if (left[i] != right[i]) {
+                return left[i] - right[i];
+            }
+        }
+        return leftLength - rightLength;
+    }
+
+    private static class RunReader implements Comparable<RunReader>, Closeable {
+        private DataInputStream dataInputStream;
+        private char[] chars = new char[64];
+        private byte[] bytes = new byte[128];
+        private int length;
+        private int count;
+
+        RunReader(File run) throws IOException {
+            dataInputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(run), 1 << 16));
+        }
+
+        boolean advance() throws IOException {
+            try {
+                length = dataInputStream.readInt();
+            } catch (EOFException e) {
+                return false;
+            }
+            count = dataInputStream.readInt();
+            if (chars.length < length) {
+                chars = new char[Math.max(length, chars.length * 2)];
+                bytes = new byte[chars.length * 2];
+            }
+            dataInputStream.readFully(bytes, 0, length * 2);
+            for (int i = 0; i < length; i++) {
+                chars[i] = (char) (((bytes[2 * i] & 0xff) << 8) | (bytes[2 * i + 1] & 0xff));
+            }
+            return true;
+        }
+
+        @Override
+        public int compareTo(RunReader o) {
+            return compare(chars, length, o.chars, o.length);
+        }
+
+        @Override
+        public void close() throws IOException {
+            dataInputStream.close();
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.huaze.shen.util;
+
+import java.util.Arrays;
+
+/**
+ * @author Huaze Shen
+ * @date 2026-10-18
+ *
+ * long到int的开放寻址哈希表，避免装箱
+ */
+public class LongIntHashMap {
+    private static final long EMPTY = Long.MIN_VALUE;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+    private int mask;
+    private int resizeThreshold;
+
+    public LongIntHashMap() {
+        this(16);
+    }
+
+    public LongIntHashMap(int expectedSize) {
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    /**
+     * 直接使用已经排布好的键值数组(如从快照载入)，长度必须是2的幂，空槽位的键为Long.MIN_VALUE
+     */
+    public LongIntHashMap(long[] keys, int[] values, int size) {
+        this.keys = keys;
+        this.values = values;
+        this.size = size;
+        this.mask = keys.length - 1;
+        this.resizeThreshold = (int) (keys.length * LOAD_FACTOR);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean containsKey(long key) {
+        return keys[slotOf(key)] != EMPTY;
+    }
+
+    public int get(long key, int defaultValue) {
+        int slot = slotOf(key);
+        return keys[slot] == EMPTY ? defaultValue : values[slot];
+    }
+
+    public void put(long key, int value) {
+        checkKey(key);
+        int slot = slotOf(key);
+        if (keys[slot] == EMPTY) {
+            keys[slot] = key;
+            values[slot] = value;
+            afterInsert();
+        } else {
+            values[slot] = value;
+        }
+    }
+
+    /**
+     * 累加计数，键不存在时从0开始，返回累加后的值
+     */
+    public int addTo(long key, int delta) {
+        checkKey(key);
+        int slot = slotOf(key);
+        if (keys[slot] == EMPTY) {
+            keys[slot] = key;
+            values[slot] = delta;
+            afterInsert();
+            return delta;
+        }
+        values[slot] += delta;
+        return values[slot];
+    }
+
+    public long[] getKeys() {
+        return keys;
+    }
+
+    public int[] getValues() {
+        return values;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+    }
+
+    public void forEach(EntryVisitor visitor) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) {
+                visitor.visit(keys[i], values[i]);
+            }
+        }
+    }
+
+    /**
+     * 估算占用的堆内存字节数
+     */
+    public long estimateBytes() {
+        return (long) keys.length * (Long.BYTES + Integer.BYTES);
+    }
+
+    public interface EntryVisitor {
+        void visit(long key, int value);
+    }
+
+    private int slotOf(long key) {
+        int slot = mix(key) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void afterInsert() {
+        size++;
+        if (size > resizeThreshold) {
+            rehash(keys.length << 1);
+        }
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = slotOf(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        mask = capacity - 1;
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static void checkKey(long key) {
+        if (key == EMPTY) {
+            throw new IllegalArgumentException("key must not be Long.MIN_VALUE");
+        }
+    }
+
+    private static int tableSizeFor(int expectedSize) {
+        int capacity = 16;
+        while (capacity * LOAD_FACTOR < expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    static int mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+}
@@ -0,0 +1,63 @@
+package com.huaze.shen.crf;
+
+import com.huaze.shen.dict.BigramIndex;
+import com.huaze.shen.dict.Lexicon;
+import com.huaze.shen.dict.UserDictionary;
+import com.huaze.shen.dict.Vocabulary;
+import com.huaze.shen.feature.IntFeatureExtractor;
+import com.huaze.shen.feature.TagScheme;
+import com.huaze.shen.util.LongIntHashMap;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+/**
+ * @author Huaze Shen
+ * @date 2026-10-18
+ *
+ * 用户词典按原始字符匹配：权重全为0的模型把每个字切成一个词，只有词典词会被合并
+ */
+public class UserDictionarySegmentTest {
+    private CrfSegmenter crfSegmenter;
+
+    @Before
+    public void setUp() {
+        Lexicon lexicon = new Lexicon(new Vocabulary(), new BigramIndex());
+        IntFeatureExtractor intFeatureExtractor = new IntFeatureExtractor(lexicon, new LongIntHashMap(), 2, 6);
+        crfSegmenter = new CrfSegmenter(intFeatureExtractor, new CrfModel(1, TagScheme.COUNT));
+    }
+
+    @Test
+    public void numeralEntryDoesNotMatchOtherNumerals() {
+        crfSegmenter.setUserDictionary(UserDictionary.build(Collections.singletonList("三星")));
+        assertEquals(Arrays.asList("这", "是", "一", "家", "五", "星", "级", "酒", "店"),
+                crfSegmenter.segment("这是一家五星级酒店"));
+        assertEquals(Arrays.asList("三星", "手", "机"), crfSegmenter.segment("三星手机"));
+    }
+
+    @Test
+    public void cacheDistinguishesSentencesWithTheSameNormalizedChars() {
+        SegmentationCache cache = new SegmentationCache(1 << 20);
+        crfSegmenter.setCache(cache);
+        assertEquals(Arrays.asList("三", "星", "级"), crfSegmenter.segment("三星级"));
+        crfSegmenter.setUserDictionary(UserDictionary.build(Collections.singletonList("三星")));
+        assertNotSame(cache, crfSegmenter.getCache());
+        assertEquals(Arrays.asList("三星", "级"), crfSegmenter.segment("三星级"));
+        assertEquals(Arrays.asList("五", "星", "级"), crfSegmenter.segment("五星级"));
+        assertEquals(Arrays.asList("三星", "级"), crfSegmenter.segment("三星级"));
+        crfSegmenter.setCache(null);
+    }
+
+    @Test
+    public void entryWithSpacesMatchesSentenceWithoutThem() {
+        UserDictionary userDictionary = UserDictionary.build(Collections.singletonList("iPhone 15"));
+        assertEquals("iPhone15", userDictionary.word(0));
+        crfSegmenter.setUserDictionary(userDictionary);
+        assertEquals(Arrays.asList("买", "iPhone15"), crfSegmenter.segment("买iPhone 15"));
+    }
+}